@@ -0,0 +1,74 @@
+package com.continent.engine;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares block encryption and key setup of {@link TwofishEngine} with full and partial keying.
+ * <p>
+ * Run with <code>gradle jmh -Pbenchmark=TwofishEngineBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TwofishEngineBenchmark {
+
+    @Param({"true", "false"})
+    public boolean fullKeying;
+
+    private TwofishEngine engine;
+    private KeyParameter key;
+    private byte[] block;
+    private byte[] out;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new KeyParameter(keyBytes);
+
+        engine = new TwofishEngine(24, fullKeying);
+        engine.init(true, key);
+
+        block = new byte[engine.getBlockSize()];
+        random.nextBytes(block);
+        out = new byte[block.length];
+    }
+
+    @Benchmark
+    public byte[] processBlock() {
+        engine.processBlock(block, 0, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public TwofishEngine init() {
+        engine.init(true, key);
+        return engine;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TwofishEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
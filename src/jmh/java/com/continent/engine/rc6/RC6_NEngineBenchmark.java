@@ -0,0 +1,79 @@
+package com.continent.engine.rc6;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares block encryption of {@link RC6_NEngine} with its former BigInteger-based implementation.
+ * <p>
+ * Run with <code>gradle jmh -Pbenchmark=RC6_NEngineBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RC6_NEngineBenchmark {
+
+    @Param({"RC6_256_256NEngine", "RC6_512_512Engine", "RC6_512_1024Engine", "RC6_1024_1024Engine"})
+    public String engine;
+
+    private BlockCipher limbEngine;
+    private BlockCipher bigIntegerEngine;
+    private byte[] block;
+    private byte[] out;
+
+    @Setup
+    public void setup() throws Exception {
+        @SuppressWarnings("unchecked")
+        Class<? extends RC6_NEngine> engineClass =
+                (Class<? extends RC6_NEngine>) Class.forName(RC6_NEngine.class.getPackage().getName() + "." + engine);
+        limbEngine = engineClass.newInstance();
+        bigIntegerEngine = BigIntegerRC6Engine.of(engineClass);
+
+        Random random = new Random(1);
+        byte[] key = new byte[RC6_1024_1024Engine.class == engineClass ? 128 : 64];
+        random.nextBytes(key);
+        limbEngine.init(true, new KeyParameter(key));
+        bigIntegerEngine.init(true, new KeyParameter(key));
+
+        block = new byte[limbEngine.getBlockSize()];
+        random.nextBytes(block);
+        out = new byte[block.length];
+    }
+
+    @Benchmark
+    public byte[] limbs() {
+        limbEngine.processBlock(block, 0, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] bigInteger() {
+        bigIntegerEngine.processBlock(block, 0, out, 0);
+        return out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RC6_NEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
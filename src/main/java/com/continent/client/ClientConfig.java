@@ -3,6 +3,8 @@ package com.continent.client;
 import java.util.List;
 import java.util.Map;
 
+import com.continent.service.SocketOptions;
+
 public class ClientConfig {
 
     List<String> servers;
@@ -15,6 +17,46 @@ public class ClientConfig {
     Map<Integer, String> portMapping;
     int nonceSeedInterval;
     int keySeedInterval;
+    int multiplexedTunnels;
+    int connectionPoolSize;
+    SocketOptions socketOptions = new SocketOptions();
+    long noiseBandwidth;
+    long noiseSessionBandwidth;
+
+    public long getNoiseBandwidth() {
+        return noiseBandwidth;
+    }
+    public void setNoiseBandwidth(long noiseBandwidth) {
+        this.noiseBandwidth = noiseBandwidth;
+    }
+
+    public long getNoiseSessionBandwidth() {
+        return noiseSessionBandwidth;
+    }
+    public void setNoiseSessionBandwidth(long noiseSessionBandwidth) {
+        this.noiseSessionBandwidth = noiseSessionBandwidth;
+    }
+
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+    public void setSocketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public int getMultiplexedTunnels() {
+        return multiplexedTunnels;
+    }
+    public void setMultiplexedTunnels(int multiplexedTunnels) {
+        this.multiplexedTunnels = multiplexedTunnels;
+    }
 
     public int getNonceSeedInterval() {
         return nonceSeedInterval;
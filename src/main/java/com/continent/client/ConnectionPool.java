@@ -0,0 +1,274 @@
+package com.continent.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.continent.handler.CipherEncoderHandler;
+import com.continent.handler.client.CipherClientEncoderHandler;
+import com.continent.random.RandomDelegator;
+import com.continent.random.RandomService;
+import com.continent.service.HandshakeService;
+import com.continent.service.SessionData;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+
+/**
+ * Keeps connections to the server established ahead of time, so TCP connect, TLS handshake
+ * and cipher initialization are not on the path of a local connection.
+ * <p>
+ * Server closes connections which haven't sent anything within a minute and its session id
+ * would be lost then. So idle connection is retired earlier by sending a random packet,
+ * which lets server move on to the next session id. Retired connection is replaced only if pool
+ * has been used since the previous one was established, so idle client doesn't keep reconnecting.
+ * <p>
+ * Only SOCKS tunnels are pooled. Port mapping tunnel connects to the mapped host as soon
+ * as server receives its first packet, so it can't be established ahead of time.
+ */
+public class ConnectionPool {
+
+    private static final long MAX_IDLE_TIME = TimeUnit.SECONDS.toMillis(50);
+
+    private final TunnelConnector connector;
+    private final RandomService randomService;
+    private final HandshakeService handshakeService;
+    private final EventLoopGroup group;
+    private final Class<? extends Channel> channelClass;
+    private final int size;
+    private final long maxIdleTime;
+
+    private final Deque<PooledConnection> ready = new ArrayDeque<>();
+    private int pending;
+    private final AtomicLong acquires = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong retired = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    class PooledConnection extends ChannelInboundHandlerAdapter {
+
+        final SessionData sessionData;
+        final RandomDelegator randomGenerator;
+        volatile ChannelHandlerContext ctx;
+        volatile long readyTime;
+        volatile long readyAcquires;
+        boolean pending = true;
+
+        PooledConnection(SessionData sessionData, RandomDelegator randomGenerator) {
+            this.sessionData = sessionData;
+            this.randomGenerator = randomGenerator;
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+            // not propagated until connection is taken from the pool
+            readyTime = System.currentTimeMillis();
+            readyAcquires = acquires.get();
+            settle(this, true);
+
+            ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (remove(PooledConnection.this)) {
+                        retire(PooledConnection.this);
+                        if (acquires.get() != readyAcquires) {
+                            replenish();
+                        }
+                    }
+                }
+            }, maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    public ConnectionPool(TunnelConnector connector, RandomService randomService, HandshakeService handshakeService,
+                          EventLoopGroup group, Class<? extends Channel> channelClass, int size) {
+        this(connector, randomService, handshakeService, group, channelClass, size, MAX_IDLE_TIME);
+    }
+
+    ConnectionPool(TunnelConnector connector, RandomService randomService, HandshakeService handshakeService,
+                   EventLoopGroup group, Class<? extends Channel> channelClass, int size, long maxIdleTime) {
+        this.connector = connector;
+        this.randomService = randomService;
+        this.handshakeService = handshakeService;
+        this.group = group;
+        this.channelClass = channelClass;
+        this.size = size;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public void start() {
+        replenish();
+    }
+
+    /**
+     * Takes established SOCKS tunnel connection from the pool and passes <code>channelActive</code> event to <code>handlers</code>.
+     *
+     * @return connection channel or <code>null</code> if pool is empty
+     */
+    public Channel acquire(final ChannelHandler... handlers) {
+        acquires.incrementAndGet();
+        SessionData sessionData = handshakeService.getClientSession();
+        PooledConnection connection = null;
+        while (true) {
+            connection = poll();
+            if (connection == null) {
+                break;
+            }
+
+            if (connection.sessionData == sessionData
+                    && connection.ctx.channel().isActive()
+                        && System.currentTimeMillis() - connection.readyTime < maxIdleTime) {
+                break;
+            }
+            retire(connection);
+        }
+        replenish();
+
+        if (connection == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        final PooledConnection pooledConnection = connection;
+        final Channel channel = connection.ctx.channel();
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                channel.pipeline().addLast(handlers);
+                pooledConnection.ctx.fireChannelActive();
+                channel.pipeline().remove(pooledConnection);
+            }
+        });
+        return channel;
+    }
+
+    /**
+     * Closes all pooled connections, used when session keys have been changed.
+     */
+    public void drain() {
+        List<PooledConnection> drained;
+        synchronized (ready) {
+            drained = new ArrayList<>(ready);
+            ready.clear();
+        }
+        for (PooledConnection connection : drained) {
+            connection.ctx.channel().close();
+        }
+        replenish();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        drain();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRetired() {
+        return retired.get();
+    }
+
+    public int getSize() {
+        synchronized (ready) {
+            return ready.size();
+        }
+    }
+
+    private PooledConnection poll() {
+        synchronized (ready) {
+            return ready.poll();
+        }
+    }
+
+    private void settle(PooledConnection connection, boolean isReady) {
+        synchronized (ready) {
+            if (connection.pending) {
+                connection.pending = false;
+                pending--;
+            }
+            if (isReady) {
+                ready.add(connection);
+            }
+        }
+    }
+
+    private boolean remove(PooledConnection connection) {
+        synchronized (ready) {
+            return ready.remove(connection);
+        }
+    }
+
+    private void replenish() {
+        if (shutdown || handshakeService.getClientSession() == null) {
+            return;
+        }
+
+        int amount;
+        synchronized (ready) {
+            amount = size - ready.size() - pending;
+            if (amount <= 0) {
+                return;
+            }
+            pending += amount;
+        }
+
+        for (int i = 0; i < amount; i++) {
+            connect();
+        }
+    }
+
+    private void connect() {
+        RandomDelegator randomGenerator = randomService.createRandomDataGenerator();
+        final PooledConnection connection = new PooledConnection(handshakeService.getClientSession(), randomGenerator);
+
+        ChannelFuture future = connector.connect(group.next(), channelClass, randomGenerator,
+                CipherClientEncoderHandler.SOCKS5_TUNNEL, null, false, connection);
+        future.channel().closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                // failed connection isn't replaced right away, next acquire does it
+                settle(connection, false);
+                remove(connection);
+            }
+        });
+    }
+
+    private void retire(PooledConnection connection) {
+        retired.incrementAndGet();
+        Channel channel = connection.ctx.channel();
+        if (!channel.isActive() || connection.sessionData != handshakeService.getClientSession()) {
+            channel.close();
+            return;
+        }
+
+        ByteBuf randomDataSize = Unpooled.copyInt(connection.randomGenerator.nextInt(1500));
+        ByteBuf randomPacket = Unpooled.wrappedBuffer(CipherEncoderHandler.RANDOM_PACKET_HEADER.copy(), randomDataSize);
+        channel.writeAndFlush(randomPacket).addListener(ChannelFutureListener.CLOSE);
+    }
+
+}
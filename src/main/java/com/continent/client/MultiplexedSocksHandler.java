@@ -0,0 +1,100 @@
+package com.continent.client;
+
+import com.continent.handler.mux.MultiplexedStream;
+import com.continent.random.RandomDelegator;
+import com.continent.server.SocksServerUtils;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.socksx.SocksMessage;
+import io.netty.handler.codec.socksx.SocksVersion;
+import io.netty.handler.codec.socksx.v5.*;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles SOCKS5 negotiation locally and opens a stream to the requested host
+ * through multiplexed tunnel instead of sending SOCKS5 messages to the server.
+ */
+public class MultiplexedSocksHandler extends SimpleChannelInboundHandler<SocksMessage> {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiplexedSocksHandler.class);
+
+    private final MultiplexedTunnelPool tunnelPool;
+    private final RandomDelegator randomGenerator;
+    private final boolean useRandomPackets;
+
+    public MultiplexedSocksHandler(MultiplexedTunnelPool tunnelPool, RandomDelegator randomGenerator, boolean useRandomPackets) {
+        this.tunnelPool = tunnelPool;
+        this.randomGenerator = randomGenerator;
+        this.useRandomPackets = useRandomPackets;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, SocksMessage socksRequest) throws Exception {
+        if (socksRequest.decoderResult().isFailure() || socksRequest.version() != SocksVersion.SOCKS5) {
+            log.error("Can't decode request: " + socksRequest);
+            ctx.close();
+            return;
+        }
+
+        if (socksRequest instanceof Socks5InitialRequest) {
+            ctx.pipeline().addBefore(ctx.name(), null, new Socks5CommandRequestDecoder());
+            ctx.writeAndFlush(new DefaultSocks5InitialResponse(Socks5AuthMethod.NO_AUTH));
+            ctx.channel().read();
+        } else if (socksRequest instanceof Socks5CommandRequest
+                        && ((Socks5CommandRequest) socksRequest).type() == Socks5CommandType.CONNECT) {
+            final Socks5CommandRequest request = (Socks5CommandRequest) socksRequest;
+            String host = request.dstAddr();
+            if (request.dstAddrType() == Socks5AddressType.IPv6) {
+                host = "[" + host + "]";
+            }
+
+            tunnelPool.open(host + ":" + request.dstPort(), ctx.channel()).addListener(new FutureListener<MultiplexedStream>() {
+                @Override
+                public void operationComplete(Future<MultiplexedStream> future) throws Exception {
+                    if (!future.isSuccess()) {
+                        ctx.channel().writeAndFlush(new DefaultSocks5CommandResponse(
+                                Socks5CommandStatus.FAILURE, request.dstAddrType()));
+                        SocksServerUtils.closeOnFlush(ctx.channel());
+                        return;
+                    }
+
+                    final MultiplexedStream stream = future.getNow();
+                    ctx.channel().writeAndFlush(new DefaultSocks5CommandResponse(
+                            Socks5CommandStatus.SUCCESS,
+                            request.dstAddrType(),
+                            request.dstAddr(),
+                            request.dstPort())).addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) throws Exception {
+                            if (!future.isSuccess()) {
+                                stream.reset();
+                                return;
+                            }
+
+                            // relay goes first to receive bytes left in decoders
+                            ProxyClientHandler.startRelay(ctx.channel(), stream, randomGenerator, useRandomPackets);
+                            ctx.pipeline().remove(Socks5InitialRequestDecoder.class);
+                            ctx.pipeline().remove(Socks5CommandRequestDecoder.class);
+                            ctx.pipeline().remove(Socks5ServerEncoder.class);
+                            ctx.pipeline().remove(MultiplexedSocksHandler.this);
+                        }
+                    });
+                }
+            });
+        } else {
+            ctx.close();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        log.error("SOCKS5 negotiation error", cause);
+        SocksServerUtils.closeOnFlush(ctx.channel());
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.continent.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.continent.handler.client.ClientStreamMultiplexer;
+import com.continent.handler.client.CipherClientEncoderHandler;
+import com.continent.handler.mux.MultiplexedStream;
+import com.continent.handler.mux.StreamFrameDecoder;
+import com.continent.handler.mux.StreamFrameEncoder;
+import com.continent.random.RandomService;
+import com.continent.service.HandshakeService;
+import com.continent.service.SessionData;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Keeps a few long-lived tunnels to the server and spreads local connections over them as streams.
+ * Tunnels created with previous session keys get no new streams after re-handshake.
+ */
+public class MultiplexedTunnelPool {
+
+    private final TunnelConnector connector;
+    private final RandomService randomService;
+    private final HandshakeService handshakeService;
+    private final EventLoopGroup group;
+    private final int size;
+
+    private final List<ClientStreamMultiplexer> tunnels = new ArrayList<>();
+
+    public MultiplexedTunnelPool(TunnelConnector connector, RandomService randomService, HandshakeService handshakeService,
+                                 EventLoopGroup group, int size) {
+        this.connector = connector;
+        this.randomService = randomService;
+        this.handshakeService = handshakeService;
+        this.group = group;
+        this.size = size;
+    }
+
+    public Future<MultiplexedStream> open(String target, Channel peer) {
+        Promise<MultiplexedStream> promise = peer.eventLoop().newPromise();
+        acquire(peer.getClass()).open(target, peer, promise);
+        return promise;
+    }
+
+    private synchronized ClientStreamMultiplexer acquire(Class<? extends Channel> channelClass) {
+        SessionData sessionData = handshakeService.getClientSession();
+        for (Iterator<ClientStreamMultiplexer> iterator = tunnels.iterator(); iterator.hasNext();) {
+            ClientStreamMultiplexer tunnel = iterator.next();
+            if (!tunnel.isOpen()) {
+                iterator.remove();
+            } else if (tunnel.getSessionData() != sessionData) {
+                tunnel.retire();
+                iterator.remove();
+            }
+        }
+
+        if (tunnels.size() < size) {
+            ClientStreamMultiplexer tunnel = connect(sessionData, channelClass);
+            tunnels.add(tunnel);
+            return tunnel;
+        }
+
+        ClientStreamMultiplexer result = tunnels.get(0);
+        for (ClientStreamMultiplexer tunnel : tunnels) {
+            if (tunnel.getLoad() < result.getLoad()) {
+                result = tunnel;
+            }
+        }
+        return result;
+    }
+
+    private ClientStreamMultiplexer connect(SessionData sessionData, Class<? extends Channel> channelClass) {
+        final ClientStreamMultiplexer tunnel = new ClientStreamMultiplexer(sessionData);
+        ChannelFuture future = connector.connect(group.next(), channelClass, randomService.createRandomDataGenerator(),
+                CipherClientEncoderHandler.MULTIPLEXED_TUNNEL, null, true,
+                new StreamFrameDecoder(), StreamFrameEncoder.INSTANCE, tunnel);
+        tunnel.setChannel(future.channel());
+
+        future.channel().closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                remove(tunnel);
+            }
+        });
+        return tunnel;
+    }
+
+    private synchronized void remove(ClientStreamMultiplexer tunnel) {
+        tunnels.remove(tunnel);
+    }
+
+}
@@ -15,10 +15,14 @@
  */
 package com.continent.client;
 
+import com.continent.handler.NoiseScheduler;
 import com.continent.random.RandomService;
 import com.continent.random.entropy.EntropySource;
 import com.continent.random.entropy.NativeJitterEntropy;
 import com.continent.service.HandshakeService;
+import com.continent.service.KeyPairPool;
+import com.continent.service.SslContexts;
+import com.continent.service.Transport;
 import com.google.common.util.concurrent.*;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
@@ -27,8 +31,7 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.ssl.SslContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
@@ -54,6 +57,9 @@ public final class ProxyClient {
 
     private volatile RandomService randomService;
     private volatile HandshakeService handshakeService;
+    private volatile ConnectionPool connectionPool;
+    private volatile KeyPairPool keyPairPool;
+    private volatile NoiseScheduler noiseScheduler;
     
     public ProxyClient() {
     }
@@ -70,6 +76,15 @@ public final class ProxyClient {
                 && handshakeService.getClientSession() != null) {
             handshakeService.getClientSession().clear();
         }
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+        }
+        if (keyPairPool != null) {
+            keyPairPool.shutdown();
+        }
+        if (noiseScheduler != null) {
+            noiseScheduler.shutdown();
+        }
         if (randomService != null) {
             randomService.shutdown();
         }
@@ -108,8 +123,8 @@ public final class ProxyClient {
             urls.add(URI.create(server));
         }
         // Configure the bootstrap.
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        bossGroup = Transport.newEventLoopGroup(1);
+        workerGroup = Transport.newEventLoopGroup(0);
         final ChannelGroup group = new DefaultChannelGroup(workerGroup.next());
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -125,7 +140,12 @@ public final class ProxyClient {
             @Override
             public void run() {
                 randomService = new RandomService(config.getNonceSeedInterval(), config.getKeySeedInterval());
-                handshakeService = new HandshakeService(executor, randomService, workerGroup, config.getKey(), urls, group);
+                // next handshake happens on key rotation, single key pair is enough
+                keyPairPool = new KeyPairPool(randomService, 1, 1);
+                noiseScheduler = new NoiseScheduler(config.getNoiseBandwidth(), config.getNoiseSessionBandwidth());
+                // shared by all connections to resume TLS sessions
+                final SslContext sslContext = SslContexts.forClient();
+                handshakeService = new HandshakeService(executor, keyPairPool, randomService, workerGroup, config.getKey(), urls, group, sslContext);
 
                 ListenableFuture<Void> future = handshakeService.connect();
                 Futures.addCallback(future, new FutureCallback<Void>() {
@@ -137,6 +157,18 @@ public final class ProxyClient {
 
                         final AtomicInteger counter = new AtomicInteger(1);
 
+                        TunnelConnector connector = new TunnelConnector(urls, randomService, handshakeService, sslContext,
+                                config.isTcpNoDelay(), config.getSocketOptions(), noiseScheduler);
+                        MultiplexedTunnelPool tunnelPool = null;
+                        if (config.getMultiplexedTunnels() > 0) {
+                            tunnelPool = new MultiplexedTunnelPool(connector, randomService, handshakeService,
+                                    workerGroup, config.getMultiplexedTunnels());
+                        } else if (config.getConnectionPoolSize() > 0) {
+                            connectionPool = new ConnectionPool(connector, randomService, handshakeService,
+                                    workerGroup, Transport.socketChannelClass(), config.getConnectionPoolSize());
+                            connectionPool.start();
+                        }
+
                         ChannelFutureListener listener = new ChannelFutureListener() {
                             @Override
                             public void operationComplete(ChannelFuture future) throws Exception {
@@ -160,9 +192,9 @@ public final class ProxyClient {
 
                                     ServerBootstrap portMappingServer = new ServerBootstrap();
                                     portMappingServer.group(bossGroup, workerGroup)
-                                    .channel(NioServerSocketChannel.class)
-                                    .childHandler(new ProxyClientInitializer(urls,
-                                            randomService, handshakeService, mappedHost, config.isTcpNoDelay(), group, config.getMaxWriteDelayMs(), config.isUseRandomPackets()))
+                                    .channel(Transport.serverChannelClass())
+                                    .childHandler(new ProxyClientInitializer(connector, tunnelPool, connectionPool,
+                                            randomService, mappedHost, group, config.getMaxWriteDelayMs(), config.isUseRandomPackets()))
                                     .childOption(ChannelOption.AUTO_READ, false)
                                     .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
                                     .bind(port).addListener(listener);
@@ -173,9 +205,9 @@ public final class ProxyClient {
 
                             ServerBootstrap b = new ServerBootstrap();
                             b.group(bossGroup, workerGroup)
-                            .channel(NioServerSocketChannel.class)
-                            .childHandler(new ProxyClientInitializer(urls,
-                                    randomService, handshakeService, null, config.isTcpNoDelay(), group, config.getMaxWriteDelayMs(), config.isUseRandomPackets()))
+                            .channel(Transport.serverChannelClass())
+                            .childHandler(new ProxyClientInitializer(connector, tunnelPool, connectionPool,
+                                    randomService, null, group, config.getMaxWriteDelayMs(), config.isUseRandomPackets()))
                             .childOption(ChannelOption.AUTO_READ, false)
                             .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
                             b.bind(config.getPort()).addListener(listener);
@@ -213,7 +245,15 @@ public final class ProxyClient {
         workerGroup.schedule(new Runnable() {
             @Override
             public void run() {
-                handshakeService.connect();
+                ListenableFuture<Void> future = handshakeService.connect();
+                future.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (connectionPool != null) {
+                            connectionPool.drain();
+                        }
+                    }
+                }, MoreExecutors.directExecutor());
                 scheduleReHandshake(config);
             }
         }, interval, TimeUnit.SECONDS);
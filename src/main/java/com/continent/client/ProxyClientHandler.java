@@ -17,50 +17,37 @@ package com.continent.client;
 
 import com.continent.handler.BackendHandler;
 import com.continent.handler.RandomPacketHandler;
-import com.continent.handler.client.CipherClientDecoderHandler;
 import com.continent.handler.client.CipherClientEncoderHandler;
 import com.continent.handler.client.ClientMappedHostHandshakeHandler;
+import com.continent.handler.mux.MultiplexedStream;
+import com.continent.handler.mux.StreamRelayHandler;
 import com.continent.random.RandomDelegator;
 import com.continent.random.RandomService;
-import com.continent.service.CryptoService;
-import com.continent.service.HandshakeService;
-import com.continent.service.SessionData;
-import com.continent.service.SessionId;
-import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
-import io.netty.handler.ssl.*;
-import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-
-import javax.net.ssl.SSLEngine;
-import java.net.URI;
-import java.util.Arrays;
-import java.util.List;
+import io.netty.handler.codec.socksx.SocksPortUnificationServerHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 
 public class ProxyClientHandler extends ChannelInboundHandlerAdapter {
 
     private final ChannelGroup group;
-    private final HandshakeService handshakeService;
-    private final RandomService randomService;
+    private final TunnelConnector connector;
+    private final MultiplexedTunnelPool tunnelPool;
+    private final ConnectionPool connectionPool;
     private final String mappedHost;
 
-    private final boolean tcpNodelay;
-    private final List<URI> urls;
     private final Integer delayInMillis;
     private final boolean useRandomPackets;
 
     private final RandomDelegator randomGenerator;
     
-    public ProxyClientHandler(List<URI> urls, 
-            RandomService randomService, HandshakeService handshakeService, String mappedHost, boolean tcpNodelay, ChannelGroup group, Integer delayInMillis, boolean useRandomPackets) {
-        this.urls = urls;
-        this.randomService = randomService;
+    public ProxyClientHandler(TunnelConnector connector, MultiplexedTunnelPool tunnelPool, ConnectionPool connectionPool,
+            RandomService randomService, String mappedHost, ChannelGroup group, Integer delayInMillis, boolean useRandomPackets) {
+        this.connector = connector;
+        this.tunnelPool = tunnelPool;
+        this.connectionPool = connectionPool;
         this.mappedHost = mappedHost;
-        this.handshakeService = handshakeService;
-        this.tcpNodelay = tcpNodelay;
         this.group = group;
         this.delayInMillis = delayInMillis;
         this.useRandomPackets = useRandomPackets;
@@ -71,104 +58,37 @@ public class ProxyClientHandler extends ChannelInboundHandlerAdapter {
     public void channelActive(ChannelHandlerContext ctx) {
         final Channel inboundChannel = ctx.channel();
 
-        int index = randomService.getNonceGenerator().nextInt(urls.size());
-        final URI serverUri = urls.get(index);
-
-        // Start the connection attempt.
-        Bootstrap b = new Bootstrap();
-        b.option(ChannelOption.TCP_NODELAY, tcpNodelay);
-        b.group(inboundChannel.eventLoop())
-         .channel(ctx.channel().getClass())
-         .handler(new ChannelInitializer<Channel>() {
-             
-             @Override
-             protected void initChannel(final Channel serverChannel) throws Exception {
-                 SessionData sessionData = handshakeService.getClientSession();
-                 
-                 CryptoService holder = new CryptoService();
-
-                 byte[] sessionId = new byte[SessionId.SIZE];
-                 byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
-                 sessionData.getLock().lock();
-                 sessionData.getClientSessionGenerator().nextBytes(sessionId);
-                 sessionData.getClientIVGenerator().nextBytes(iv);
-                 sessionData.getLock().unlock();
-
-                 handshakeService.generateNewServerSessionId();
-
-                 holder.setEncoderCiphers(sessionData.getClientCiphers(), sessionData.getClientKey(), iv);
-                 
-//                 group.add(serverChannel);
-                 
-                 if (serverUri.getScheme().equals("https")) {
-                     SslContextBuilder sslContextBuilder = SslContextBuilder.forClient();
-                     ApplicationProtocolConfig apn = new ApplicationProtocolConfig(
-                             Protocol.ALPN, SelectorFailureBehavior.CHOOSE_MY_LAST_PROTOCOL,
-                             SelectedListenerFailureBehavior.ACCEPT, Arrays.asList("h2", "http/1.1"));
-                     sslContextBuilder.applicationProtocolConfig(apn);
-                     sslContextBuilder.trustManager(InsecureTrustManagerFactory.INSTANCE);
-                     
-                     SslContext sslContext = sslContextBuilder.build();
-                     SSLEngine sslEngine = sslContext.newEngine(serverChannel.alloc(), serverUri.getHost(), serverUri.getPort());
-                     SslHandler sslHandler = new SslHandler(sslEngine);
-                     serverChannel.pipeline().addLast(sslHandler);
-                     serverChannel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
-                         
-                         volatile boolean sslInitDone;
-                         
-                         @Override
-                         public void channelActive(ChannelHandlerContext ctx) throws Exception {
-                             if (sslInitDone) {
-                                 super.channelActive(ctx);
-                             }
-                         }
-                         
-                         @Override
-                         public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-                             if (!sslInitDone && (evt instanceof SslHandshakeCompletionEvent)) {
-                                 SslHandshakeCompletionEvent e = (SslHandshakeCompletionEvent) evt;
-                                 if (e.isSuccess()) {
-                                     sslInitDone = true;
-                                     ctx.fireChannelActive();
-                                 }
-                             }
-
-                             super.userEventTriggered(ctx, evt);
-                         }
-
-                     });
-                 }
+        if (tunnelPool != null) {
+            openStream(ctx);
+            return;
+        }
 
-//                     ch.pipeline().addLast(new LoggingHandler("encrypted", LogLevel.INFO));
-                 serverChannel.pipeline().addLast(new CipherClientEncoderHandler(randomGenerator, sessionId, mappedHost, holder));
-                 serverChannel.pipeline().addLast(new CipherClientDecoderHandler(handshakeService, holder, 
-                         sessionData.getServerCiphers(), sessionData.getServerKey()));
-//                     ch.pipeline().addLast(new LoggingHandler("decrypted", LogLevel.INFO));
-                 
-                 if (mappedHost != null) {
-                     serverChannel.pipeline().addLast(new ClientMappedHostHandshakeHandler(inboundChannel));
-                 } else {
-                     serverChannel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
-                         @Override
-                        public void channelActive(ChannelHandlerContext ctx) throws Exception {
-                             super.channelActive(ctx);
-                             
-                             // connection completed start to read first data
-                             inboundChannel.read();
-                             serverChannel.read();
-                        }
-                     });
-                 }
-                 
-                 serverChannel.pipeline().addLast(new BackendHandler(inboundChannel));
-             }
-         })
-         .option(ChannelOption.AUTO_READ, false)
-         .option(ChannelOption.SO_KEEPALIVE, true);
+        ChannelHandler handshakeHandler;
+        if (mappedHost != null) {
+            handshakeHandler = new ClientMappedHostHandshakeHandler(inboundChannel);
+        } else {
+            handshakeHandler = new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelActive(ChannelHandlerContext ctx) throws Exception {
+                    super.channelActive(ctx);
+
+                    // connection completed start to read first data
+                    inboundChannel.read();
+                    ctx.channel().read();
+                }
+            };
+        }
 
-        
-        ChannelFuture f = b.connect(serverUri.getHost(), serverUri.getPort());
-        Channel serverChannel = f.channel();
+        Channel serverChannel = null;
+        if (connectionPool != null && mappedHost == null) {
+            serverChannel = connectionPool.acquire(handshakeHandler, new BackendHandler(inboundChannel));
+        }
+        if (serverChannel == null) {
+            byte tunnelType = mappedHost != null ? CipherClientEncoderHandler.PORT_MAPPING_TUNNEL : CipherClientEncoderHandler.SOCKS5_TUNNEL;
+            ChannelFuture f = connector.connect(inboundChannel.eventLoop(), inboundChannel.getClass(), randomGenerator,
+                    tunnelType, mappedHost, false, handshakeHandler, new BackendHandler(inboundChannel));
+            serverChannel = f.channel();
+        }
 
         if (useRandomPackets) {
             ctx.pipeline().addLast(new RandomPacketHandler(randomGenerator, serverChannel));
@@ -177,4 +97,33 @@ public class ProxyClientHandler extends ChannelInboundHandlerAdapter {
         ctx.pipeline().addLast(new BackendHandler(randomGenerator, serverChannel, delayInMillis));
     }
 
+    private void openStream(ChannelHandlerContext ctx) {
+        final Channel inboundChannel = ctx.channel();
+        if (mappedHost == null) {
+            ctx.pipeline().addLast(new SocksPortUnificationServerHandler(),
+                    new MultiplexedSocksHandler(tunnelPool, randomGenerator, useRandomPackets));
+            inboundChannel.read();
+            return;
+        }
+
+        tunnelPool.open(mappedHost, inboundChannel).addListener(new FutureListener<MultiplexedStream>() {
+            @Override
+            public void operationComplete(Future<MultiplexedStream> future) throws Exception {
+                if (future.isSuccess()) {
+                    startRelay(inboundChannel, future.getNow(), randomGenerator, useRandomPackets);
+                } else {
+                    inboundChannel.close();
+                }
+            }
+        });
+    }
+
+    static void startRelay(Channel inboundChannel, MultiplexedStream stream, RandomDelegator randomGenerator, boolean useRandomPackets) {
+        if (useRandomPackets) {
+            inboundChannel.pipeline().addLast(new RandomPacketHandler(randomGenerator, stream.getTunnel()));
+        }
+        inboundChannel.pipeline().addLast(new StreamRelayHandler(stream));
+        inboundChannel.read();
+    }
+
 }
@@ -15,11 +15,7 @@
  */
 package com.continent.client;
 
-import java.net.URI;
-import java.util.List;
-
 import com.continent.random.RandomService;
-import com.continent.service.HandshakeService;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
@@ -27,21 +23,21 @@ import io.netty.channel.socket.SocketChannel;
 public class ProxyClientInitializer extends ChannelInitializer<SocketChannel> {
 
     private final RandomService randomService;
-    private final HandshakeService handshakeService;
+    private final TunnelConnector connector;
+    private final MultiplexedTunnelPool tunnelPool;
+    private final ConnectionPool connectionPool;
     private final String mappedHost;
-    private final boolean tcpNodelay;
-    private final List<URI> urls;
     private final ChannelGroup group;
     private final Integer delayInMillis;
     private final boolean useRandomPackets;
 
-    public ProxyClientInitializer(List<URI> urls, RandomService randomService, HandshakeService handshakeService, 
-            String mappedHost, boolean tcpNodelay, ChannelGroup group, Integer delayInMillis, boolean useRandomPackets) {
-        this.urls = urls;
+    public ProxyClientInitializer(TunnelConnector connector, MultiplexedTunnelPool tunnelPool, ConnectionPool connectionPool,
+            RandomService randomService, String mappedHost, ChannelGroup group, Integer delayInMillis, boolean useRandomPackets) {
+        this.connector = connector;
+        this.tunnelPool = tunnelPool;
+        this.connectionPool = connectionPool;
         this.randomService = randomService;
         this.mappedHost = mappedHost;
-        this.handshakeService = handshakeService;
-        this.tcpNodelay = tcpNodelay;
         this.group = group;
         this.delayInMillis = delayInMillis;
         this.useRandomPackets = useRandomPackets;
@@ -51,7 +47,7 @@ public class ProxyClientInitializer extends ChannelInitializer<SocketChannel> {
     public void initChannel(SocketChannel ch) {
         ch.pipeline().addLast(
 //                new LoggingHandler("frontend", LogLevel.INFO),
-                new ProxyClientHandler(urls, randomService, 
-                        handshakeService, mappedHost, tcpNodelay, group, delayInMillis, useRandomPackets));
+                new ProxyClientHandler(connector, tunnelPool, connectionPool, randomService,
+                        mappedHost, group, delayInMillis, useRandomPackets));
     }
 }
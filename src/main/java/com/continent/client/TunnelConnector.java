@@ -0,0 +1,120 @@
+package com.continent.client;
+
+import com.continent.handler.NoiseScheduler;
+import com.continent.handler.client.CipherClientDecoderHandler;
+import com.continent.handler.client.CipherClientEncoderHandler;
+import com.continent.random.RandomDelegator;
+import com.continent.random.RandomService;
+import com.continent.service.CryptoService;
+import com.continent.service.HandshakeService;
+import com.continent.service.SessionData;
+import com.continent.service.SessionId;
+import com.continent.service.SocketOptions;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.handler.ssl.*;
+
+import javax.net.ssl.SSLEngine;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Opens encrypted connections to one of the servers.
+ * Channel becomes active for the handlers passed to {@link #connect} only after TLS handshake is done.
+ */
+public class TunnelConnector {
+
+    private final List<URI> urls;
+    private final RandomService randomService;
+    private final HandshakeService handshakeService;
+    private final SslContext sslContext;
+    private final boolean tcpNodelay;
+    private final SocketOptions socketOptions;
+    private final NoiseScheduler noiseScheduler;
+
+    public TunnelConnector(List<URI> urls, RandomService randomService, HandshakeService handshakeService, SslContext sslContext, boolean tcpNodelay,
+                           SocketOptions socketOptions, NoiseScheduler noiseScheduler) {
+        this.urls = urls;
+        this.randomService = randomService;
+        this.handshakeService = handshakeService;
+        this.sslContext = sslContext;
+        this.tcpNodelay = tcpNodelay;
+        this.socketOptions = socketOptions;
+        this.noiseScheduler = noiseScheduler;
+    }
+
+    public ChannelFuture connect(EventLoop eventLoop, Class<? extends Channel> channelClass, final RandomDelegator randomGenerator,
+                                 final byte tunnelType, final String mappedHost, boolean autoRead, final ChannelHandler... handlers) {
+        int index = randomService.getNonceGenerator().nextInt(urls.size());
+        final URI serverUri = urls.get(index);
+
+        Bootstrap b = new Bootstrap();
+        b.option(ChannelOption.TCP_NODELAY, tcpNodelay);
+        socketOptions.apply(b);
+        b.group(eventLoop)
+         .channel(channelClass)
+         .handler(new ChannelInitializer<Channel>() {
+
+             @Override
+             protected void initChannel(final Channel serverChannel) throws Exception {
+                 SessionData sessionData = handshakeService.getClientSession();
+                 serverChannel.attr(NoiseScheduler.SCHEDULER).set(noiseScheduler);
+                 serverChannel.attr(NoiseScheduler.SESSION).set(sessionData);
+
+                 CryptoService holder = new CryptoService();
+
+                 byte[] sessionId = new byte[SessionId.SIZE];
+                 byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
+                 sessionData.getLock().lock();
+                 sessionData.getClientSessionGenerator().nextBytes(sessionId);
+                 sessionData.getClientIVGenerator().nextBytes(iv);
+                 sessionData.getLock().unlock();
+
+                 handshakeService.generateNewServerSessionId();
+
+                 holder.setEncoderCiphers(sessionData.getClientKeySchedule(), iv, serverChannel.eventLoop());
+
+                 if (serverUri.getScheme().equals("https")) {
+                     SSLEngine sslEngine = sslContext.newEngine(serverChannel.alloc(), serverUri.getHost(), serverUri.getPort());
+                     SslHandler sslHandler = new SslHandler(sslEngine);
+                     serverChannel.pipeline().addLast(sslHandler);
+                     serverChannel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+
+                         volatile boolean sslInitDone;
+
+                         @Override
+                         public void channelActive(ChannelHandlerContext ctx) throws Exception {
+                             if (sslInitDone) {
+                                 super.channelActive(ctx);
+                             }
+                         }
+
+                         @Override
+                         public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                             if (!sslInitDone && (evt instanceof SslHandshakeCompletionEvent)) {
+                                 SslHandshakeCompletionEvent e = (SslHandshakeCompletionEvent) evt;
+                                 if (e.isSuccess()) {
+                                     sslInitDone = true;
+                                     ctx.fireChannelActive();
+                                 }
+                             }
+
+                             super.userEventTriggered(ctx, evt);
+                         }
+
+                     });
+                 }
+
+                 serverChannel.pipeline().addLast(new CipherClientEncoderHandler(randomGenerator, sessionId, tunnelType, mappedHost, holder));
+                 serverChannel.pipeline().addLast(new CipherClientDecoderHandler(handshakeService, holder,
+                         sessionData.getServerKeySchedule()));
+                 serverChannel.pipeline().addLast(handlers);
+             }
+         })
+         .option(ChannelOption.AUTO_READ, autoRead)
+         .option(ChannelOption.SO_KEEPALIVE, true);
+
+        return b.connect(serverUri.getHost(), serverUri.getPort());
+    }
+
+}
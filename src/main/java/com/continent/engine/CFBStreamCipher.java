@@ -0,0 +1,288 @@
+package com.continent.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.OutputLengthException;
+import org.bouncycastle.crypto.StreamCipher;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+
+/**
+ * Full-block CFB mode. Produces the same output as
+ * <code>new CFBBlockCipher(cipher, cipher.getBlockSize()*8)</code>
+ * but processes whole blocks at once instead of byte by byte.
+ * <p>
+ * CFB decryption of a block depends only on the ciphertext, so large inputs are
+ * decrypted in parallel segments, each one seeded with the ciphertext block preceding it.
+ * The calling thread decrypts the first segment and then blocks until the other segments
+ * are decrypted by shared worker executors. For network connections the caller is a Netty event loop,
+ * which is blocked for the time of decrypting its share of a frame larger than 32 KB.
+ */
+public class CFBStreamCipher implements StreamCipher {
+
+    /**
+     * Source of engines keyed like the cipher of this mode for worker executors.
+     */
+    public interface WorkerEngines {
+
+        /**
+         * Returns engine owned by <code>executor</code>. Called only from the thread of <code>executor</code>.
+         */
+        BlockCipher get(EventExecutor executor);
+
+    }
+
+    private static final int PARALLEL_THRESHOLD = 32*1024;
+    private static final int MIN_SEGMENT_SIZE = 16*1024;
+
+    private static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final EventExecutorGroup WORKERS =
+            new DefaultEventExecutorGroup(DEFAULT_PARALLELISM, new DefaultThreadFactory("cfb-decrypt", true));
+
+    private final BlockCipher cipher;
+    private final int blockSize;
+    private final int parallelism;
+
+    private final byte[] iv;
+    private final byte[] feedback;
+    private final byte[] keystream;
+    private int byteCount;
+    private boolean encrypting;
+
+    private WorkerEngines workers;
+
+    public CFBStreamCipher(BlockCipher cipher) {
+        this(cipher, null);
+    }
+
+    /**
+     * Uses already keyed <code>cipher</code>, so {@link #init} needs only IV.
+     * <code>workers</code> supply engines for parallel decryption.
+     */
+    public CFBStreamCipher(BlockCipher cipher, WorkerEngines workers) {
+        this(cipher, workers, DEFAULT_PARALLELISM);
+    }
+
+    CFBStreamCipher(BlockCipher cipher, WorkerEngines workers, int parallelism) {
+        super();
+        this.cipher = cipher;
+        this.blockSize = cipher.getBlockSize();
+        this.iv = new byte[blockSize];
+        this.feedback = new byte[blockSize];
+        this.keystream = new byte[blockSize];
+        this.workers = workers;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void init(boolean forEncryption, CipherParameters params) throws IllegalArgumentException {
+        this.encrypting = forEncryption;
+
+        if (params instanceof ParametersWithIV) {
+            ParametersWithIV ivParam = (ParametersWithIV) params;
+            byte[] ivBytes = ivParam.getIV();
+
+            if (ivBytes.length < iv.length) {
+                Arrays.fill(iv, 0, iv.length - ivBytes.length, (byte)0);
+                System.arraycopy(ivBytes, 0, iv, iv.length - ivBytes.length, ivBytes.length);
+            } else {
+                System.arraycopy(ivBytes, 0, iv, 0, iv.length);
+            }
+
+            reset();
+
+            if (ivParam.getParameters() != null) {
+                initCipher(ivParam.getParameters());
+            }
+        } else {
+            reset();
+
+            if (params != null) {
+                initCipher(params);
+            }
+        }
+    }
+
+    private void initCipher(CipherParameters params) {
+        cipher.init(true, params);
+        workers = new KeyedWorkerEngines(cipher.getClass(), params);
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return cipher.getAlgorithmName() + "/CFB" + (blockSize * 8);
+    }
+
+    @Override
+    public byte returnByte(byte in) {
+        if (byteCount == 0) {
+            cipher.processBlock(feedback, 0, keystream, 0);
+        }
+
+        byte result = (byte)(keystream[byteCount] ^ in);
+        feedback[byteCount] = encrypting ? result : in;
+        if (++byteCount == blockSize) {
+            byteCount = 0;
+        }
+        return result;
+    }
+
+    @Override
+    public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff) throws DataLengthException {
+        if (inOff + len > in.length) {
+            throw new DataLengthException("input buffer too small");
+        }
+        if (outOff + len > out.length) {
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        int i = 0;
+        while (byteCount != 0 && i < len) {
+            out[outOff + i] = returnByte(in[inOff + i]);
+            i++;
+        }
+
+        int blocksLength = (len - i) - (len - i) % blockSize;
+        if (!encrypting && blocksLength >= PARALLEL_THRESHOLD) {
+            i += decryptParallel(in, inOff + i, blocksLength, out, outOff + i);
+        }
+
+        while (len - i >= blockSize) {
+            processBlock(in, inOff + i, out, outOff + i);
+            i += blockSize;
+        }
+
+        while (i < len) {
+            out[outOff + i] = returnByte(in[inOff + i]);
+            i++;
+        }
+        return len;
+    }
+
+    private void processBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        cipher.processBlock(feedback, 0, keystream, 0);
+
+        if (encrypting) {
+            for (int j = 0; j < blockSize; j++) {
+                out[outOff + j] = (byte)(in[inOff + j] ^ keystream[j]);
+            }
+            System.arraycopy(out, outOff, feedback, 0, blockSize);
+        } else {
+            // copied first as input and output may be the same array
+            System.arraycopy(in, inOff, feedback, 0, blockSize);
+            for (int j = 0; j < blockSize; j++) {
+                out[outOff + j] = (byte)(feedback[j] ^ keystream[j]);
+            }
+        }
+    }
+
+    private int decryptParallel(final byte[] in, int inOff, int len, final byte[] out, int outOff) {
+        int blocks = len / blockSize;
+        int segments = Math.min(parallelism, len / MIN_SEGMENT_SIZE);
+        if (segments < 2 || workers == null) {
+            return 0;
+        }
+
+        final WorkerEngines engines = workers;
+        List<EventExecutor> executors = new ArrayList<>(segments - 1);
+        List<Runnable> segmentTasks = new ArrayList<>(segments - 1);
+        int blocksPerSegment = blocks / segments;
+        for (int segment = 1; segment < segments; segment++) {
+            final int start = segment*blocksPerSegment*blockSize;
+            final int end = segment == segments - 1 ? len : start + blocksPerSegment*blockSize;
+            // preceding ciphertext block should be captured before in-place decryption overwrites it
+            final byte[] segmentIV = Arrays.copyOfRange(in, inOff + start - blockSize, inOff + start);
+            final int segmentInOff = inOff + start;
+            final int segmentOutOff = outOff + start;
+            final EventExecutor executor = WORKERS.next();
+            executors.add(executor);
+            segmentTasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    decrypt(engines.get(executor), segmentIV, in, segmentInOff, end - start, out, segmentOutOff);
+                }
+            });
+        }
+        byte[] lastBlock = Arrays.copyOfRange(in, inOff + len - blockSize, inOff + len);
+
+        List<Future<?>> tasks = new ArrayList<>(segmentTasks.size());
+        for (int i = 0; i < segmentTasks.size(); i++) {
+            tasks.add(executors.get(i).submit(segmentTasks.get(i)));
+        }
+        decrypt(cipher, feedback, in, inOff, blocksPerSegment*blockSize, out, outOff);
+        for (Future<?> task : tasks) {
+            task.syncUninterruptibly();
+        }
+
+        System.arraycopy(lastBlock, 0, feedback, 0, blockSize);
+        return len;
+    }
+
+    /**
+     * Engines keyed on demand by this mode, used when the mode is keyed through {@link #init}.
+     */
+    private static class KeyedWorkerEngines implements WorkerEngines {
+
+        private final Class<? extends BlockCipher> cipherClass;
+        private final CipherParameters keyParams;
+        private final ConcurrentMap<EventExecutor, BlockCipher> engines = new ConcurrentHashMap<>();
+
+        KeyedWorkerEngines(Class<? extends BlockCipher> cipherClass, CipherParameters keyParams) {
+            this.cipherClass = cipherClass;
+            this.keyParams = keyParams;
+        }
+
+        @Override
+        public BlockCipher get(EventExecutor executor) {
+            BlockCipher engine = engines.get(executor);
+            if (engine == null) {
+                try {
+                    engine = cipherClass.newInstance();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                engine.init(true, keyParams);
+                engines.put(executor, engine);
+            }
+            return engine;
+        }
+
+    }
+
+    private static void decrypt(BlockCipher cipher, byte[] iv, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        int blockSize = cipher.getBlockSize();
+        byte[] segmentFeedback = Arrays.copyOf(iv, blockSize);
+        byte[] segmentKeystream = new byte[blockSize];
+        for (int i = 0; i < len; i += blockSize) {
+            cipher.processBlock(segmentFeedback, 0, segmentKeystream, 0);
+            System.arraycopy(in, inOff + i, segmentFeedback, 0, blockSize);
+            for (int j = 0; j < blockSize; j++) {
+                out[outOff + i + j] = (byte)(segmentFeedback[j] ^ segmentKeystream[j]);
+            }
+        }
+        Arrays.fill(segmentKeystream, (byte)0);
+    }
+
+    @Override
+    public void reset() {
+        System.arraycopy(iv, 0, feedback, 0, iv.length);
+        Arrays.fill(keystream, (byte)0);
+        byteCount = 0;
+
+        // block ciphers keep no state between blocks, their reset would only repeat key schedule
+    }
+
+}
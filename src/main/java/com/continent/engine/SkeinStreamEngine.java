@@ -4,6 +4,7 @@ import java.util.Arrays;
 
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.OutputLengthException;
 import org.bouncycastle.crypto.StreamCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
@@ -14,11 +15,14 @@ import com.continent.random.SkeinRandom;
 
 public class SkeinStreamEngine implements StreamCipher {
 
+    private static final int MAX_CHUNK_LENGTH = 1023;
+
     private final int stateSize;
     private SkeinRandom random;
-    private boolean init;
+    private final byte[] keyLength = new byte[2];
+    private final byte[] state = new byte[MAX_CHUNK_LENGTH];
+    private int length;
     private int index;
-    private byte[] state;
     
     public SkeinStreamEngine(int stateSize) {
         super();
@@ -42,11 +46,14 @@ public class SkeinStreamEngine implements StreamCipher {
             paramsBuilder.setKey(key);
             random = new SkeinRandom(null, paramsBuilder.build(), stateSize*8, 72);
             
+            byte[] buf = new byte[stateSize];
             for (int i = 0; i < 8; i++) {
-                byte[] buf = new byte[stateSize];
                 random.nextBytes(buf);
-                Arrays.fill(buf, (byte)0);
             }
+            Arrays.fill(buf, (byte)0);
+            Arrays.fill(state, (byte)0);
+            length = 0;
+            index = 0;
         }
     }
 
@@ -57,25 +64,8 @@ public class SkeinStreamEngine implements StreamCipher {
 
     @Override
     public byte returnByte(byte in) {
-        if (random == null) {
-            throw new IllegalStateException(getAlgorithmName() + " not initialised");
-        }
-
-        if (!init || index == state.length) {
-            init = true;
-            index = 0;
-
-            // generate random key length in range between 1 and 1024
-            byte[] keyLength = new byte[2];
-            random.nextBytes(keyLength);
-
-            int length = keyLength[0] & 0xFF;
-            length += (keyLength[1] & 0xFF) << 8;
-            length = Math.abs(length) % 1023 + 1;
-            Arrays.fill(keyLength, (byte)0);
-            
-            state = new byte[length];
-            random.nextBytes(state);
+        if (index == length) {
+            nextChunk();
         }
         byte res = (byte)((state[index] ^ in) & 0xFF);
         // burn it
@@ -84,10 +74,46 @@ public class SkeinStreamEngine implements StreamCipher {
         return res;
     }
 
+    private void nextChunk() {
+        if (random == null) {
+            throw new IllegalStateException(getAlgorithmName() + " not initialised");
+        }
+
+        index = 0;
+
+        // generate random key length in range between 1 and 1024
+        random.nextBytes(keyLength);
+
+        length = keyLength[0] & 0xFF;
+        length += (keyLength[1] & 0xFF) << 8;
+        length = Math.abs(length) % MAX_CHUNK_LENGTH + 1;
+        Arrays.fill(keyLength, (byte)0);
+
+        random.nextBytes(state, 0, length);
+    }
+
     @Override
     public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff) throws DataLengthException {
-        for (int i = 0; i < len; i++) {
-            out[outOff + i] = returnByte(in[inOff + i]);
+        if (inOff + len > in.length) {
+            throw new DataLengthException("input buffer too short");
+        }
+        if (outOff + len > out.length) {
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        int processed = 0;
+        while (processed < len) {
+            if (index == length) {
+                nextChunk();
+            }
+            int n = Math.min(len - processed, length - index);
+            for (int i = 0; i < n; i++) {
+                out[outOff + processed + i] = (byte)(in[inOff + processed + i] ^ state[index + i]);
+            }
+            // burn it
+            Arrays.fill(state, index, index + n, (byte)0);
+            index += n;
+            processed += n;
         }
         return len;
     }
@@ -1,5 +1,7 @@
 package com.continent.engine;
 
+import java.util.Arrays;
+
 import org.bouncycastle.crypto.BlockCipher;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
@@ -12,6 +14,12 @@ import org.bouncycastle.crypto.params.KeyParameter;
  * This Java implementation is based on the Java reference
  * implementation provided by Bruce Schneier and developed
  * by Raif S. Naffah.
+ * <p>
+ * By default the engine uses full keying: the key-dependent S-boxes are merged
+ * with the MDS matrix into four 256-entry tables at <code>init()</code>, so the g-function
+ * of each round is four table lookups. With partial keying only the S-box key words
+ * are kept and the g-function is evaluated through the q-permutations on every call,
+ * which saves 4 KB of tables per engine at the cost of block speed.
  */
 public final class TwofishEngine
     implements BlockCipher
@@ -204,32 +212,12 @@ public final class TwofishEngine
     private static final int    SK_BUMP = 0x01010101;
     private static final int    SK_ROTL = 9;
 
-    private boolean encrypting = false;
-
-    private int[] gMDS0 = new int[MAX_KEY_BITS];
-    private int[] gMDS1 = new int[MAX_KEY_BITS];
-    private int[] gMDS2 = new int[MAX_KEY_BITS];
-    private int[] gMDS3 = new int[MAX_KEY_BITS];
-
-    /**
-     * gSubKeys[] and gSBox[] are eventually used in the 
-     * encryption and decryption methods.
-     */
-    private int[] gSubKeys;
-    private int[] gSBox;
-
-    private int k64Cnt = 0;
-
-    private byte[] workingKey = null;
+    private static final int[] gMDS0 = new int[MAX_KEY_BITS];
+    private static final int[] gMDS1 = new int[MAX_KEY_BITS];
+    private static final int[] gMDS2 = new int[MAX_KEY_BITS];
+    private static final int[] gMDS3 = new int[MAX_KEY_BITS];
 
-    public TwofishEngine(int rounds) {
-        this();
-        ROUNDS = rounds;
-        MAX_ROUNDS = rounds;
-        TOTAL_SUBKEYS=ROUND_SUBKEYS+2*MAX_ROUNDS;
-    }        
-    
-    public TwofishEngine() {
+    static {
         // calculate the MDS matrix
         int[] m1 = new int[2];
         int[] mX = new int[2];
@@ -262,6 +250,53 @@ public final class TwofishEngine
         }
     }
 
+    private boolean encrypting = false;
+
+    private final boolean fullKeying;
+
+    /**
+     * gSubKeys[] and gSBox0..3[] are eventually used in the 
+     * encryption and decryption methods. They are allocated once
+     * and refilled on every key change.
+     */
+    private int[] gSubKeys;
+    private int[] gSBox0;
+    private int[] gSBox1;
+    private int[] gSBox2;
+    private int[] gSBox3;
+
+    private final int[] k32e = new int[MAX_KEY_BITS/64]; // 4
+    private final int[] k32o = new int[MAX_KEY_BITS/64]; // 4
+    private final int[] sBoxKeys = new int[MAX_KEY_BITS/64]; // 4
+
+    private int k64Cnt = 0;
+
+    private byte[] workingKey = null;
+
+    public TwofishEngine(int rounds, boolean fullKeying) {
+        ROUNDS = rounds;
+        MAX_ROUNDS = rounds;
+        TOTAL_SUBKEYS=ROUND_SUBKEYS+2*MAX_ROUNDS;
+        this.fullKeying = fullKeying;
+
+        gSubKeys = new int[TOTAL_SUBKEYS];
+        if (fullKeying)
+        {
+            gSBox0 = new int[MAX_KEY_BITS];
+            gSBox1 = new int[MAX_KEY_BITS];
+            gSBox2 = new int[MAX_KEY_BITS];
+            gSBox3 = new int[MAX_KEY_BITS];
+        }
+    }
+
+    public TwofishEngine(int rounds) {
+        this(rounds, true);
+    }        
+    
+    public TwofishEngine() {
+        this(24);
+    }
+
     /**
      * initialise a Twofish cipher.
      *
@@ -344,12 +379,6 @@ public final class TwofishEngine
 
     private void setKey(byte[] key)
     {
-        int[] k32e = new int[MAX_KEY_BITS/64]; // 4
-        int[] k32o = new int[MAX_KEY_BITS/64]; // 4 
-
-        int[] sBoxKeys = new int[MAX_KEY_BITS/64]; // 4 
-        gSubKeys = new int[TOTAL_SUBKEYS];
-
         if (k64Cnt < 1) 
         {
             throw new IllegalArgumentException("Key size less than 64 bits");
@@ -366,6 +395,9 @@ public final class TwofishEngine
          * maximum of 32 bytes (256 bits), so the range
          * for k64Cnt is 1..4
          */
+        Arrays.fill(k32e, 0);
+        Arrays.fill(k32o, 0);
+        Arrays.fill(sBoxKeys, 0);
         for (int i=0; i<k64Cnt ; i++)
         {
             int p = i* 8;
@@ -389,6 +421,11 @@ public final class TwofishEngine
             gSubKeys[i*2 + 1] = A << SK_ROTL | A >>> (32-SK_ROTL);
         }
 
+        if (!fullKeying)
+        {
+            return;
+        }
+
         /*
          * fully expand the table for speed
          */
@@ -397,17 +434,16 @@ public final class TwofishEngine
         int k2 = sBoxKeys[2];
         int k3 = sBoxKeys[3];
         int b0, b1, b2, b3;
-        gSBox = new int[4*MAX_KEY_BITS];
         for (int i=0; i<MAX_KEY_BITS; i++)
         {
             b0 = b1 = b2 = b3 = i;
             switch (k64Cnt & 3)
             {
                 case 1:
-                    gSBox[i*2]       = gMDS0[(P[P_01][b0] & 0xff) ^ b0(k0)];
-                    gSBox[i*2+1]     = gMDS1[(P[P_11][b1] & 0xff) ^ b1(k0)];
-                    gSBox[i*2+0x200] = gMDS2[(P[P_21][b2] & 0xff) ^ b2(k0)];
-                    gSBox[i*2+0x201] = gMDS3[(P[P_31][b3] & 0xff) ^ b3(k0)];
+                    gSBox0[i]       = gMDS0[(P[P_01][b0] & 0xff) ^ b0(k0)];
+                    gSBox1[i]     = gMDS1[(P[P_11][b1] & 0xff) ^ b1(k0)];
+                    gSBox2[i] = gMDS2[(P[P_21][b2] & 0xff) ^ b2(k0)];
+                    gSBox3[i] = gMDS3[(P[P_31][b3] & 0xff) ^ b3(k0)];
                 break;
                 case 0: // 256 bits of key
                     b0 = (P[P_04][b0] & 0xff) ^ b0(k3);
@@ -422,20 +458,20 @@ public final class TwofishEngine
                     b3 = (P[P_33][b3] & 0xff) ^ b3(k2);
                     // fall through, having pre-processed b[0]..b[3] with k32[2]
                 case 2: // 128 bits of key
-                    gSBox[i*2]   = gMDS0[(P[P_01]
+                    gSBox0[i]   = gMDS0[(P[P_01]
                         [(P[P_02][b0] & 0xff) ^ b0(k1)] & 0xff) ^ b0(k0)];
-                    gSBox[i*2+1] = gMDS1[(P[P_11]
+                    gSBox1[i] = gMDS1[(P[P_11]
                         [(P[P_12][b1] & 0xff) ^ b1(k1)] & 0xff) ^ b1(k0)];
-                    gSBox[i*2+0x200] = gMDS2[(P[P_21]
+                    gSBox2[i] = gMDS2[(P[P_21]
                         [(P[P_22][b2] & 0xff) ^ b2(k1)] & 0xff) ^ b2(k0)];
-                    gSBox[i*2+0x201] = gMDS3[(P[P_31]
+                    gSBox3[i] = gMDS3[(P[P_31]
                         [(P[P_32][b3] & 0xff) ^ b3(k1)] & 0xff) ^ b3(k0)];
                 break;
             }
         }
 
         /* 
-         * the function exits having setup the gSBox with the 
+         * the function exits having setup the gSBox0..3 with the 
          * input key material.
          */
     }
@@ -445,7 +481,7 @@ public final class TwofishEngine
      * the result in the provided buffer starting at the given offset.
      * The input will be an exact multiple of our blocksize.
      *
-     * encryptBlock uses the pre-calculated gSBox[] and subKey[]
+     * encryptBlock uses the pre-calculated gSBox0..3[] and subKey[]
      * arrays.
      */
     private void encryptBlock(
@@ -609,25 +645,25 @@ public final class TwofishEngine
         return ((x << 8) ^ (g3 << 24) ^ (g2 << 16) ^ (g3 << 8) ^ b);
     }
         
-    private int LFSR1(int x)
+    private static int LFSR1(int x)
     {
         return (x >> 1) ^ 
                 (((x & 0x01) != 0) ? GF256_FDBK_2 : 0);
     }
 
-    private int LFSR2(int x)
+    private static int LFSR2(int x)
     {
         return (x >> 2) ^
                 (((x & 0x02) != 0) ? GF256_FDBK_2 : 0) ^
                 (((x & 0x01) != 0) ? GF256_FDBK_4 : 0);
     }
 
-    private int Mx_X(int x)
+    private static int Mx_X(int x)
     {
         return x ^ LFSR2(x);
     } // 5B
 
-    private int Mx_Y(int x)
+    private static int Mx_Y(int x)
     {
         return x ^ LFSR1(x) ^ LFSR2(x);
     } // EF
@@ -654,18 +690,26 @@ public final class TwofishEngine
 
     private int Fe32_0(int x)
     {
-        return gSBox[ 0x000 + 2*(x & 0xff) ] ^
-               gSBox[ 0x001 + 2*((x >>> 8) & 0xff) ] ^
-               gSBox[ 0x200 + 2*((x >>> 16) & 0xff) ] ^
-               gSBox[ 0x201 + 2*((x >>> 24) & 0xff) ];
+        if (!fullKeying)
+        {
+            return F32(x, sBoxKeys);
+        }
+        return gSBox0[ x & 0xff ] ^
+               gSBox1[ (x >>> 8) & 0xff ] ^
+               gSBox2[ (x >>> 16) & 0xff ] ^
+               gSBox3[ (x >>> 24) & 0xff ];
     }
     
     private int Fe32_3(int x)
     {
-        return gSBox[ 0x000 + 2*((x >>> 24) & 0xff) ] ^
-               gSBox[ 0x001 + 2*(x & 0xff) ] ^
-               gSBox[ 0x200 + 2*((x >>> 8) & 0xff) ] ^
-               gSBox[ 0x201 + 2*((x >>> 16) & 0xff) ];
+        if (!fullKeying)
+        {
+            return F32(x << 8 | x >>> 24, sBoxKeys);
+        }
+        return gSBox0[ (x >>> 24) & 0xff ] ^
+               gSBox1[ x & 0xff ] ^
+               gSBox2[ (x >>> 8) & 0xff ] ^
+               gSBox3[ (x >>> 16) & 0xff ];
     }
     
     private int BytesTo32Bits(byte[] b, int p)
@@ -9,30 +9,39 @@ import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.OutputLengthException;
 import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Pack;
 
 /**
- * An RC6 engine.
+ * An RC6 engine with words of 64 bits and more.
+ * <p>
+ * Each word is stored as fixed amount of 64-bit limbs in little-endian order,
+ * all arithmetic is performed modulo 2^wordSize over the limbs.
  */
 public class RC6_NEngine
     implements BlockCipher
 {
-//    private static final int wordSize = 256;
+    private static final long MASK32 = 0xFFFFFFFFL;
+
     private final int wordSize;
-//    private static final int wordSize = 64;
     private final int bytesPerWord;
 
+    /*
+     * number of 64-bit limbs per word
+     */
+    private final int limbs;
+
     /*
      * the number of rounds to perform
      */
     private final int _noRounds;
 
     /*
-     * the expanded key array of size 2*(rounds + 1)
+     * the expanded key array of size 2*(rounds + 1) words
      */
-    private BigInteger _S[];
+    private long _S[];
 
     /*
-     * our "magic constants" for wordSize 32
+     * our "magic constants" for wordSize
      *
      * Pw = Odd((e-2) * 2^wordsize)
      * Qw = Odd((o-2) * 2^wordsize)
@@ -40,35 +49,57 @@ public class RC6_NEngine
      * where e is the base of natural logarithms (2.718281828...)
      * and o is the golden ratio (1.61803398...)
      */
-//    private static final BigInteger P64 = new BigInteger("b7e151628aed2a6b", 16);
-//    private static final BigInteger Q64 = new BigInteger("9e3779b97f4a7c15", 16);
-//    private static final BigInteger LGW = BigInteger.valueOf(6);        // log2(64)
-//    private final BigInteger P64 = new BigInteger("b7e151628aed2a6abf7158809cf4f3c7", 16);
-//    private final BigInteger Q64 = new BigInteger("9e3779b97f4a7c15f39cc0605cedc834", 16);
-//    private final BigInteger LGW = BigInteger.valueOf(7);          // log2(128)
-//    private static final BigInteger P64 = new BigInteger("b7e151628aed2a6abf7158809cf4f3c762e7160f38b4da56a784d9045190cfef", 16);
-//    private static final BigInteger Q64 = new BigInteger("9e3779b97f4a7c15f39cc0605cedc8341082276bf3a27251f86c6a11d0c18e95", 16);
-//    private static final BigInteger LGW = BigInteger.valueOf(8);          // log2(256)
-//    private static final BigInteger P64 = new BigInteger("b7e151628aed2a6abf7158809cf4f3c762e7160f38b4da56a784d9045190cfef324e7738926cfbe5f4bf8d8d8c31d763da06c80abb1185eb4f7c7b5757f59584", 16);
-//    private static final BigInteger Q64 = new BigInteger("9e3779b97f4a7c15f39cc0605cedc8341082276bf3a27251f86c6a11d0c18e952767f0b153d27b7f0347045b5bf1827f01886f0928403002c1d64ba40f335e36", 16);
-//    private static final BigInteger LGW = BigInteger.valueOf(9);          // log2(512)
-    
-    private final BigInteger P64;
-    private final BigInteger Q64;
-    private final BigInteger LGW;
+    private final long[] P64;
+    private final long[] Q64;
+    private final int LGW;
+
+    /*
+     * scratch words of block processing
+     */
+    private final long[] regA;
+    private final long[] regB;
+    private final long[] regC;
+    private final long[] regD;
+    private final long[] t;
+    private final long[] u;
+    private final long[] factor;
+    private final long[] rotation;
 
     private boolean forEncryption;
 
     public RC6_NEngine(int rounds, int wordSize, BigInteger p, BigInteger q, BigInteger lgw)
     {
+        if (wordSize < 64 || Integer.bitCount(wordSize) != 1)
+        {
+            throw new IllegalArgumentException("Word size should be a power of 2 and at least 64 bits");
+        }
         _noRounds = rounds;
         this.wordSize = wordSize;
         bytesPerWord = wordSize / 8;
-        this.P64 = p;
-        this.Q64 = q;
-        this.LGW = lgw;
+        limbs = wordSize / 64;
+        this.P64 = toLimbs(p);
+        this.Q64 = toLimbs(q);
+        this.LGW = lgw.intValue();
+
+        regA = new long[limbs];
+        regB = new long[limbs];
+        regC = new long[limbs];
+        regD = new long[limbs];
+        t = new long[limbs];
+        u = new long[limbs];
+        factor = new long[limbs];
+        rotation = new long[limbs];
     }
 
+    private long[] toLimbs(BigInteger value)
+    {
+        long[] result = new long[limbs];
+        for (int i = 0; i < limbs; i++)
+        {
+            result[i] = value.shiftRight(64 * i).longValue();
+        }
+        return result;
+    }
 
     public String getAlgorithmName()
     {
@@ -123,14 +154,14 @@ public class RC6_NEngine
         }
 
         return (forEncryption)
-            ?   encryptBlock(in, inOff, out, outOff) 
+            ?   encryptBlock(in, inOff, out, outOff)
             :   decryptBlock(in, inOff, out, outOff);
     }
 
     public static void main(String[] args) {
         BigDecimal bd =  new BigDecimal("2.71828182845904523536028747135266249775724709369995957496696762772407663035354759457138217852516642742746639193200305992181741359662904357290033429526059563073813232");
         bd = bd.add(BigDecimal.valueOf(-2));
-        
+
         BigDecimal bd2 = new BigDecimal("2");
         bd2 = bd2.pow(512);
         System.out.println("bd2 " + bd2);
@@ -143,7 +174,7 @@ public class RC6_NEngine
         phi = phi.multiply(bd2);
         System.out.println("Q = " + phi.toBigInteger().toString(16));
     }
-    
+
     public void reset()
     {
     }
@@ -169,33 +200,31 @@ public class RC6_NEngine
         //   of K. Any unfilled byte positions in L are zeroed. In the
         //   case that b = c = 0, set c = 1 and L[0] = 0.
         //
-        // compute number of dwords
-        BigInteger[]   L = new BigInteger[(key.length + bytesPerWord - 1) / bytesPerWord];
+        // compute number of words
+        int keyWords = (key.length + bytesPerWord - 1) / bytesPerWord;
+        long[] L = new long[keyWords * limbs];
 
-        // load all key bytes into array of key dwords
+        // load all key bytes into array of key limbs
         for (int i = 0; i != key.length; i++)
         {
-            BigInteger b = shiftLeft(BigInteger.valueOf((long)(key[i] & 0xff)), (8 * (i % bytesPerWord)));
-            BigInteger val = L[i / bytesPerWord];
-            if (val == null) {
-                val = BigInteger.ZERO;
-            }
-            L[i / bytesPerWord] = add(val, b);
+            L[i >>> 3] |= (long)(key[i] & 0xff) << (8 * (i & 7));
         }
 
         //
         // Phase 2:
-        //   Key schedule is placed in a array of 2+2*ROUNDS+2 = 44 dwords.
+        //   Key schedule is placed in a array of 2+2*ROUNDS+2 words.
         //   Initialize S to a particular fixed pseudo-random bit pattern
         //   using an arithmetic progression modulo 2^wordsize determined
         //   by the magic numbers, Pw & Qw.
         //
-        _S            = new BigInteger[2+2*_noRounds+2];
+        int scheduleWords = 2+2*_noRounds+2;
+        _S            = new long[scheduleWords * limbs];
 
-        _S[0] = P64;
-        for (int i=1; i < _S.length; i++)
+        System.arraycopy(P64, 0, _S, 0, limbs);
+        for (int i=1; i < scheduleWords; i++)
         {
-            _S[i] = add(_S[i-1], Q64);
+            System.arraycopy(_S, (i-1) * limbs, _S, i * limbs, limbs);
+            add(_S, i * limbs, Q64, 0);
         }
 
         //
@@ -205,26 +234,44 @@ public class RC6_NEngine
         //
         int iter;
 
-        if (L.length > _S.length)
+        if (keyWords > scheduleWords)
         {
-            iter = 3 * L.length;
+            iter = 3 * keyWords;
         }
         else
         {
-            iter = 3 * _S.length;
+            iter = 3 * scheduleWords;
         }
 
-        BigInteger A = BigInteger.ZERO;
-        BigInteger B = BigInteger.ZERO;
+        long[] A = regA;
+        long[] B = regB;
+        Arrays.fill(A, 0L);
+        Arrays.fill(B, 0L);
         int i = 0, j = 0;
 
         for (int k = 0; k < iter; k++)
         {
-            A = _S[i] = rotateLeft(add(add(_S[i], A), B), BigInteger.valueOf(3));
-            B =  L[j] = rotateLeft(add(add(L[j], A), B), add(A, B));
-            i = (i+1) % _S.length;
-            j = (j+1) %  L.length;
+            // A = S[i] = (S[i] + A + B) <<< 3
+            int sOff = i * limbs;
+            add(_S, sOff, A, 0);
+            add(_S, sOff, B, 0);
+            rotateLeft(_S, sOff, 3);
+            System.arraycopy(_S, sOff, A, 0, limbs);
+
+            // B = L[j] = (L[j] + A + B) <<< (A + B)
+            int lOff = j * limbs;
+            add(L, lOff, A, 0);
+            add(L, lOff, B, 0);
+            rotateLeft(L, lOff, (int)(A[0] + B[0]) & (wordSize-1));
+            System.arraycopy(L, lOff, B, 0, limbs);
+
+            i = (i+1) % scheduleWords;
+            j = (j+1) % keyWords;
         }
+
+        Arrays.fill(L, 0L);
+        Arrays.fill(A, 0L);
+        Arrays.fill(B, 0L);
     }
 
     private int encryptBlock(
@@ -234,50 +281,48 @@ public class RC6_NEngine
         int     outOff)
     {
         // load A,B,C and D registers from in.
-        BigInteger A = bytesToWord(in, inOff);
-        BigInteger B = bytesToWord(in, inOff + bytesPerWord);
-        BigInteger C = bytesToWord(in, inOff + bytesPerWord*2);
-        BigInteger D = bytesToWord(in, inOff + bytesPerWord*3);
-        
+        long[] A = bytesToWord(in, inOff, regA);
+        long[] B = bytesToWord(in, inOff + bytesPerWord, regB);
+        long[] C = bytesToWord(in, inOff + bytesPerWord*2, regC);
+        long[] D = bytesToWord(in, inOff + bytesPerWord*3, regD);
+
         // Do pseudo-round #0: pre-whitening of B and D
-        B = add(B, _S[0]);
-        D = add(D, _S[1]);
+        add(B, 0, _S, 0);
+        add(D, 0, _S, limbs);
 
-        // perform round #1,#2 ... #ROUNDS of encryption 
+        // perform round #1,#2 ... #ROUNDS of encryption
         for (int i = 1; i <= _noRounds; i++)
         {
-            BigInteger t = BigInteger.ZERO,u = BigInteger.ZERO;
-            
-            t = multiply(B, add(multiply(B, BigInteger.valueOf(2)), BigInteger.ONE));
-            t = rotateLeft(t, LGW);
-            
-            u = multiply(D, add(multiply(D, BigInteger.valueOf(2)), BigInteger.ONE));
-            u = rotateLeft(u, LGW);
-            
-            A = A.xor(t);
-            A = rotateLeft(A,u);
-            A = add(A, _S[2*i]);
-            
-            C = C.xor(u);
-            C = rotateLeft(C,t);
-            C = add(C, _S[2*i+1]);
-            
-            BigInteger temp = A;
+            multiplyOdd(B, t);
+            rotateLeft(t, 0, LGW);
+
+            multiplyOdd(D, u);
+            rotateLeft(u, 0, LGW);
+
+            xor(A, t);
+            rotateLeft(A, 0, (int)u[0] & (wordSize-1));
+            add(A, 0, _S, 2*i*limbs);
+
+            xor(C, u);
+            rotateLeft(C, 0, (int)t[0] & (wordSize-1));
+            add(C, 0, _S, (2*i+1)*limbs);
+
+            long[] temp = A;
             A = B;
             B = C;
             C = D;
-            D = temp;            
+            D = temp;
         }
         // do pseudo-round #(ROUNDS+1) : post-whitening of A and C
-        A = add(A, _S[2*_noRounds+2]);
-        C = add(C, _S[2*_noRounds+3]);
-            
-        // store A, B, C and D registers to out        
+        add(A, 0, _S, (2*_noRounds+2)*limbs);
+        add(C, 0, _S, (2*_noRounds+3)*limbs);
+
+        // store A, B, C and D registers to out
         wordToBytes(A, out, outOff);
         wordToBytes(B, out, outOff + bytesPerWord);
         wordToBytes(C, out, outOff + bytesPerWord*2);
         wordToBytes(D, out, outOff + bytesPerWord*3);
-        
+
         return 4 * bytesPerWord;
     }
 
@@ -288,54 +333,52 @@ public class RC6_NEngine
         int     outOff)
     {
         // load A,B,C and D registers from out.
-        BigInteger A = bytesToWord(in, inOff);
-        BigInteger B = bytesToWord(in, inOff + bytesPerWord);
-        BigInteger C = bytesToWord(in, inOff + bytesPerWord*2);
-        BigInteger D = bytesToWord(in, inOff + bytesPerWord*3);
-
-        // Undo pseudo-round #(ROUNDS+1) : post whitening of A and C 
-        C = subtract(C, _S[2*_noRounds+3]);
-        A = subtract(A, _S[2*_noRounds+2]);
-        
-        // Undo round #ROUNDS, .., #2,#1 of encryption 
+        long[] A = bytesToWord(in, inOff, regA);
+        long[] B = bytesToWord(in, inOff + bytesPerWord, regB);
+        long[] C = bytesToWord(in, inOff + bytesPerWord*2, regC);
+        long[] D = bytesToWord(in, inOff + bytesPerWord*3, regD);
+
+        // Undo pseudo-round #(ROUNDS+1) : post whitening of A and C
+        subtract(C, _S, (2*_noRounds+3)*limbs);
+        subtract(A, _S, (2*_noRounds+2)*limbs);
+
+        // Undo round #ROUNDS, .., #2,#1 of encryption
         for (int i = _noRounds; i >= 1; i--)
         {
-            BigInteger t= BigInteger.ZERO,u = BigInteger.ZERO;
-            
-            BigInteger temp = D;
+            long[] temp = D;
             D = C;
             C = B;
             B = A;
             A = temp;
-            
-            t = multiply(B, add(multiply(B, BigInteger.valueOf(2)), BigInteger.ONE));
-            t = rotateLeft(t, LGW);
-            
-            u = multiply(D, add(multiply(D, BigInteger.valueOf(2)), BigInteger.ONE));
-            u = rotateLeft(u, LGW);
-            
-            C = subtract(C, _S[2*i+1]);
-            C = rotateRight(C,t);
-            C = C.xor(u);
-            
-            A = subtract(A, _S[2*i]);
-            A = rotateRight(A,u);
-            A = A.xor(t);
-            
+
+            multiplyOdd(B, t);
+            rotateLeft(t, 0, LGW);
+
+            multiplyOdd(D, u);
+            rotateLeft(u, 0, LGW);
+
+            subtract(C, _S, (2*i+1)*limbs);
+            rotateRight(C, (int)t[0] & (wordSize-1));
+            xor(C, u);
+
+            subtract(A, _S, 2*i*limbs);
+            rotateRight(A, (int)u[0] & (wordSize-1));
+            xor(A, t);
+
         }
         // Undo pseudo-round #0: pre-whitening of B and D
-        D = subtract(D, _S[1]);
-        B = subtract(B, _S[0]);
-        
+        subtract(D, _S, limbs);
+        subtract(B, _S, 0);
+
         wordToBytes(A, out, outOff);
         wordToBytes(B, out, outOff + bytesPerWord);
         wordToBytes(C, out, outOff + bytesPerWord*2);
         wordToBytes(D, out, outOff + bytesPerWord*3);
-        
+
         return 4 * bytesPerWord;
     }
 
-    
+
     //////////////////////////////////////////////////////////////
     //
     // PRIVATE Helper Methods
@@ -343,110 +386,197 @@ public class RC6_NEngine
     //////////////////////////////////////////////////////////////
 
     /**
-     * Perform a left "spin" of the word. The rotation of the given
-     * word <em>x</em> is rotated left by <em>y</em> bits.
-     * Only the <em>lg(wordSize)</em> low-order bits of <em>y</em>
-     * are used to determine the rotation amount. Here it is 
-     * assumed that the wordsize used is 32.
-     * <p>
-     * @param  x  word to rotate
-     * @param  y    number of bits to rotate % wordSize
+     * Adds word <em>y</em> to word <em>x</em> modulo 2^wordSize.
      */
-    private BigInteger rotateLeft(BigInteger x, BigInteger y)
+    private void add(long[] x, int xOff, long[] y, int yOff)
     {
-        int a = y.intValue() & (wordSize-1);
-        int b = wordSize - (y.intValue() & (wordSize-1));
-        
-        return shiftLeft(x, a).or(shiftRight(x, b));
+        long carry = 0;
+        for (int i = 0; i < limbs; i++)
+        {
+            long a = x[xOff + i];
+            long sum = a + y[yOff + i];
+            long nextCarry = lessUnsigned(sum, a) ? 1 : 0;
+            long result = sum + carry;
+            if (lessUnsigned(result, sum))
+            {
+                nextCarry++;
+            }
+            x[xOff + i] = result;
+            carry = nextCarry;
+        }
     }
 
-    public BigInteger shiftRight(BigInteger l, int shiftBy) {
-        BigInteger res = l.shiftRight(shiftBy);
-        res = normalize(res);
-        return res;
+    /**
+     * Subtracts word <em>y</em> from word <em>x</em> modulo 2^wordSize.
+     */
+    private void subtract(long[] x, long[] y, int yOff)
+    {
+        long borrow = 0;
+        for (int i = 0; i < limbs; i++)
+        {
+            long a = x[i];
+            long b = y[yOff + i];
+            long diff = a - b;
+            long nextBorrow = lessUnsigned(a, b) ? 1 : 0;
+            if (lessUnsigned(diff, borrow))
+            {
+                nextBorrow++;
+            }
+            x[i] = diff - borrow;
+            borrow = nextBorrow;
+        }
     }
-    
-    public BigInteger multiply(BigInteger a, BigInteger b) {
-        BigInteger res = a.multiply(b);
-        res = normalize(res);
-        return res;
+
+    private void xor(long[] x, long[] y)
+    {
+        for (int i = 0; i < limbs; i++)
+        {
+            x[i] ^= y[i];
+        }
     }
 
-    public BigInteger add(BigInteger a, BigInteger b) {
-        BigInteger res = a.add(b);
-        res = normalize(res);
-        return res;
+    /**
+     * Calculates <em>x</em> * (2 * <em>x</em> + 1) modulo 2^wordSize.
+     */
+    private void multiplyOdd(long[] x, long[] out)
+    {
+        long shifted = 0;
+        for (int i = 0; i < limbs; i++)
+        {
+            factor[i] = (x[i] << 1) | shifted;
+            shifted = x[i] >>> 63;
+        }
+        factor[0] |= 1;
+
+        if (limbs == 1)
+        {
+            out[0] = x[0] * factor[0];
+            return;
+        }
+
+        // only products below 2^wordSize are accumulated
+        Arrays.fill(out, 0L);
+        for (int i = 0; i < limbs; i++)
+        {
+            long xi = x[i];
+            long carry = 0;
+            for (int j = 0; j < limbs - i; j++)
+            {
+                long yj = factor[j];
+                long lo = xi * yj;
+                long hi = multiplyHigh(xi, yj);
+
+                int k = i + j;
+                long sum = out[k] + lo;
+                if (lessUnsigned(sum, lo))
+                {
+                    hi++;
+                }
+                long result = sum + carry;
+                if (lessUnsigned(result, sum))
+                {
+                    hi++;
+                }
+                out[k] = result;
+                carry = hi;
+            }
+        }
     }
-    
-    public BigInteger subtract(BigInteger a, BigInteger b) {
-        BigInteger res = a.subtract(b);
-        res = normalize(res);
-        return res;
+
+    /**
+     * Returns high 64 bits of unsigned 128-bit product.
+     */
+    private static long multiplyHigh(long x, long y)
+    {
+        long x0 = x & MASK32;
+        long x1 = x >>> 32;
+        long y0 = y & MASK32;
+        long y1 = y >>> 32;
+
+        long p00 = x0 * y0;
+        long p01 = x0 * y1;
+        long p10 = x1 * y0;
+        long p11 = x1 * y1;
+
+        long middle = (p00 >>> 32) + (p01 & MASK32) + (p10 & MASK32);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
     }
 
-    public BigInteger shiftLeft(BigInteger l, int shiftBy) {
-        BigInteger res = l.shiftLeft(shiftBy);
-        res = normalize(res);
-        return res;
+    private static boolean lessUnsigned(long a, long b)
+    {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
     }
 
-    protected BigInteger normalize(BigInteger res) {
-        byte[] array = res.toByteArray();
-        if (array.length < bytesPerWord) {
-            return res;
+    /**
+     * Perform a left "spin" of the word. The rotation of the given
+     * word <em>x</em> is rotated left by <em>y</em> bits.
+     * <p>
+     * @param  x  word to rotate
+     * @param  y  number of bits to rotate, less than wordSize
+     */
+    private void rotateLeft(long[] x, int xOff, int y)
+    {
+        if (y == 0)
+        {
+            return;
+        }
+        if (limbs == 1)
+        {
+            x[xOff] = Long.rotateLeft(x[xOff], y);
+            return;
         }
 
-        if (array.length > bytesPerWord) {
-            // BigInteger strips leading zeros
-            Arrays.fill(array, 0, array.length - bytesPerWord, (byte)0);
+        int limbShift = y >>> 6;
+        int bitShift = y & 63;
+        int limbMask = limbs - 1;
+        System.arraycopy(x, xOff, rotation, 0, limbs);
+        for (int i = 0; i < limbs; i++)
+        {
+            long high = rotation[(i - limbShift) & limbMask];
+            if (bitShift == 0)
+            {
+                x[xOff + i] = high;
+            }
+            else
+            {
+                long low = rotation[(i - limbShift - 1) & limbMask];
+                x[xOff + i] = (high << bitShift) | (low >>> (64 - bitShift));
+            }
         }
-//        array = Arrays.copyOfRange(array, array.length - bytesPerWord, array.length);
-//        System.out.println(res);
-        return new BigInteger(1, array);
     }
 
-    
     /**
      * Perform a right "spin" of the word. The rotation of the given
-     * word <em>x</em> is rotated left by <em>y</em> bits.
-     * Only the <em>lg(wordSize)</em> low-order bits of <em>y</em>
-     * are used to determine the rotation amount. Here it is 
-     * assumed that the wordsize used is a power of 2.
+     * word <em>x</em> is rotated right by <em>y</em> bits.
      * <p>
      * @param  x  word to rotate
-     * @param  y    number of bits to rotate % wordSize
+     * @param  y  number of bits to rotate, less than wordSize
      */
-    private BigInteger rotateRight(BigInteger x, BigInteger y)
+    private void rotateRight(long[] x, int y)
     {
-        int a = y.intValue() & (wordSize-1);
-        int b = wordSize - (y.intValue() & (wordSize-1));
-        
-        return shiftRight(x, a).or(shiftLeft(x, b));
+        rotateLeft(x, 0, (wordSize - y) & (wordSize-1));
     }
-    
-    private BigInteger bytesToWord(
+
+    private long[] bytesToWord(
         byte[]  src,
-        int     srcOff)
+        int     srcOff,
+        long[]  word)
     {
-        BigInteger    word = BigInteger.ZERO;
-
-        for (int i = bytesPerWord - 1; i >= 0; i--)
+        for (int i = 0; i < limbs; i++)
         {
-            word = add(shiftLeft(word, 8), BigInteger.valueOf((long)(src[i + srcOff] & 0xff)));
+            word[i] = Pack.littleEndianToLong(src, srcOff + i*8);
         }
-
         return word;
     }
 
     private void wordToBytes(
-            BigInteger    word,
+        long[]  word,
         byte[]  dst,
         int     dstOff)
     {
-        for (int i = 0; i < bytesPerWord; i++)
+        for (int i = 0; i < limbs; i++)
         {
-            dst[i + dstOff] = word.byteValue();
-            word = shiftRight(word, 8);
+            Pack.longToLittleEndian(word[i], dst, dstOff + i*8);
         }
     }
 }
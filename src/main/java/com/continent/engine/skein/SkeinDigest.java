@@ -91,6 +91,17 @@ public class SkeinDigest
         engine.init(params);
     }
 
+    /**
+     * Changes the digest size keeping the parameters the digest has been initialised with.
+     *
+     * @param digestSizeBits the output/digest size to produce in bits, which must be an integral number of
+     *                       bytes.
+     */
+    public void setDigestSize(int digestSizeBits)
+    {
+        engine.setOutputSize(digestSizeBits);
+    }
+
     public void reset()
     {
         engine.reset();
@@ -111,4 +122,12 @@ public class SkeinDigest
         return engine.doFinal(out, outOff);
     }
 
+    /**
+     * Writes the first block of the digest into <code>head</code> and the rest into <code>out</code>.
+     */
+    public int doFinal(byte[] head, byte[] out, int outOff)
+    {
+        return engine.doFinal(head, out, outOff);
+    }
+
 }
@@ -65,6 +65,11 @@ public class SkeinEngine
         private byte[] bytes = new byte[32];
 
         public Configuration(long outputSizeBits)
+        {
+            setOutputSize(outputSizeBits);
+        }
+
+        public void setOutputSize(long outputSizeBits)
         {
             // 0..3 = ASCII SHA3
             bytes[0] = (byte)'S';
@@ -468,7 +473,12 @@ public class SkeinEngine
     /**
      * Size of the digest output, in bytes
      */
-    private final int outputSizeBytes;
+    private int outputSizeBytes;
+
+    /**
+     * Configuration block for the current output size
+     */
+    private final SkeinEngine.Configuration configuration;
 
     /**
      * The current chaining/state value
@@ -505,6 +515,12 @@ public class SkeinEngine
      */
     private final byte[] singleByte = new byte[1];
 
+    /**
+     * Buffers for the output transform
+     */
+    private final byte[] outputSequenceBytes = new byte[8];
+    private final long[] outputWords;
+
     private final long rounds;
 
     /**
@@ -523,10 +539,12 @@ public class SkeinEngine
         }
         // TODO: Prevent digest sizes > block size?
         this.outputSizeBytes = outputSizeBits / 8;
+        this.configuration = new SkeinEngine.Configuration(outputSizeBits);
 
         this.rounds = rounds;
         this.threefish = new ThreefishEngine(blockSizeBits, rounds);
         this.ubi = new SkeinEngine.UBI(threefish.getBlockSize());
+        this.outputWords = new long[threefish.getBlockSize() / 8];
     }
 
     /**
@@ -582,6 +600,33 @@ public class SkeinEngine
         return outputSizeBytes;
     }
 
+    /**
+     * Changes the output size keeping the key and parameters the engine has been initialised with.
+     * The engine is reset to the initial state for the new output size.
+     *
+     * @param outputSizeBits the output/digest size to produce in bits, which must be an integral number of
+     *                       bytes.
+     */
+    public void setOutputSize(int outputSizeBits)
+    {
+        if (outputSizeBits % 8 != 0)
+        {
+            throw new IllegalArgumentException("Output size must be a multiple of 8 bits. :" + outputSizeBits);
+        }
+        if (initialState == null)
+        {
+            throw new IllegalArgumentException("Skein engine is not initialised.");
+        }
+
+        if (outputSizeBits / 8 != outputSizeBytes)
+        {
+            outputSizeBytes = outputSizeBits / 8;
+            configuration.setOutputSize(outputSizeBits);
+            createInitialState();
+        }
+        reset();
+    }
+
     public int getBlockSize()
     {
         return threefish.getBlockSize();
@@ -677,12 +722,19 @@ public class SkeinEngine
         if ((key == null) && (precalc != null))
         {
             // Precalculated UBI(CFG)
-            chain = Arrays.clone(precalc);
+            chain = Arrays.clone(precalc, chain);
         }
         else
         {
             // Blank initial state
-            chain = new long[getBlockSize() / 8];
+            if (chain == null)
+            {
+                chain = new long[getBlockSize() / 8];
+            }
+            else
+            {
+                Arrays.fill(chain, 0L);
+            }
 
             // Process key block
             if (key != null)
@@ -691,7 +743,7 @@ public class SkeinEngine
             }
 
             // Process configuration block
-            ubiComplete(PARAM_TYPE_CONFIG, new SkeinEngine.Configuration(outputSizeBytes * 8).getBytes());
+            ubiComplete(PARAM_TYPE_CONFIG, configuration.getBytes());
         }
 
         // Process additional pre-message parameters
@@ -703,7 +755,7 @@ public class SkeinEngine
                 ubiComplete(param.getType(), param.getValue());
             }
         }
-        initialState = Arrays.clone(chain);
+        initialState = Arrays.clone(chain, initialState);
     }
 
     /**
@@ -762,26 +814,50 @@ public class SkeinEngine
             throw new OutputLengthException("Output buffer is too short to hold output");
         }
 
-        // Finalise message block
-        ubiFinal();
+        finaliseMessage();
 
-        // Process additional post-message parameters
-        if (postMessageParameters != null)
+        // Perform the output transform
+        final int blockSize = getBlockSize();
+        final int blocksRequired = ((outputSizeBytes + blockSize - 1) / blockSize);
+        for (int i = 0; i < blocksRequired; i++)
         {
-            for (int i = 0; i < postMessageParameters.length; i++)
-            {
-                SkeinEngine.Parameter param = postMessageParameters[i];
-                ubiComplete(param.getType(), param.getValue());
-            }
+            final int toWrite = Math.min(blockSize, outputSizeBytes - (i * blockSize));
+            output(i, out, outOff + (i * blockSize), toWrite);
         }
 
-        // Perform the output transform
+        reset();
+
+        return outputSizeBytes;
+    }
+
+    /**
+     * Finalises the message like {@link #doFinal(byte[], int)}, but writes the first output block
+     * into <code>head</code> and the rest of the output into <code>out</code>.
+     */
+    public int doFinal(byte[] head, byte[] out, int outOff)
+    {
+        checkInitialised();
         final int blockSize = getBlockSize();
+        if (head.length < Math.min(blockSize, outputSizeBytes)
+            || out.length < (outOff + outputSizeBytes - blockSize))
+        {
+            throw new OutputLengthException("Output buffer is too short to hold output");
+        }
+
+        finaliseMessage();
+
         final int blocksRequired = ((outputSizeBytes + blockSize - 1) / blockSize);
         for (int i = 0; i < blocksRequired; i++)
         {
             final int toWrite = Math.min(blockSize, outputSizeBytes - (i * blockSize));
-            output(i, out, outOff + (i * blockSize), toWrite);
+            if (i == 0)
+            {
+                output(i, head, 0, toWrite);
+            }
+            else
+            {
+                output(i, out, outOff + ((i - 1) * blockSize), toWrite);
+            }
         }
 
         reset();
@@ -789,14 +865,29 @@ public class SkeinEngine
         return outputSizeBytes;
     }
 
+    private void finaliseMessage()
+    {
+        // Finalise message block
+        ubiFinal();
+
+        // Process additional post-message parameters
+        if (postMessageParameters != null)
+        {
+            for (int i = 0; i < postMessageParameters.length; i++)
+            {
+                SkeinEngine.Parameter param = postMessageParameters[i];
+                ubiComplete(param.getType(), param.getValue());
+            }
+        }
+    }
+
     private void output(long outputSequence, byte[] out, int outOff, int outputBytes)
     {
-        byte[] currentBytes = new byte[8];
+        byte[] currentBytes = outputSequenceBytes;
         ThreefishEngine.wordToBytes(outputSequence, currentBytes, 0);
 
         // Output is a sequence of UBI invocations all of which use and preserve the pre-output
         // state
-        long[] outputWords = new long[chain.length];
         ubiInit(PARAM_TYPE_OUTPUT);
         this.ubi.update(currentBytes, 0, currentBytes.length, outputWords);
         ubi.doFinal(outputWords);
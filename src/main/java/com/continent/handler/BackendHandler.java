@@ -16,17 +16,47 @@
 package com.continent.handler;
 
 import com.continent.random.RandomDelegator;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Relays data read from the channel to <code>inboundChannel</code>.
+ * <p>
+ * Without write delay messages of a read batch are flushed at once and next batch is read
+ * only while <code>inboundChannel</code> is writable. Reading is resumed by the handler of the opposite
+ * direction once <code>inboundChannel</code> becomes writable again.
+ * <p>
+ * With write delay each message gets random deadline within delay, but not earlier than deadline
+ * of the previous message, so messages are delivered in order. Single timer writes all messages which are due
+ * and next batch is read only while amount of delayed data is below high watermark of <code>inboundChannel</code>.
+ */
 public class BackendHandler extends ChannelInboundHandlerAdapter {
 
+    private static final AttributeKey<Boolean> AUTO_READ_PAUSED = AttributeKey.valueOf("autoReadPaused");
+
+    // messages due within this time are written together
+    private static final long DEADLINE_SLACK = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final Channel inboundChannel;
     private final Integer delayInMillis;
     private final RandomDelegator randomDelegator;
 
+    private boolean written;
+
+    private Object[] delayedMessages;
+    private long[] deadlines;
+    private int head;
+    private int size;
+    private long lastDeadline;
+    private int delayedBytes;
+    private ScheduledFuture<?> timer;
+    private boolean pausedByDelay;
+
     public BackendHandler(Channel inboundChannel) {
         this(null, inboundChannel, 0);
     }
@@ -47,32 +77,148 @@ public class BackendHandler extends ChannelInboundHandlerAdapter {
 //        }
         
         if (delayInMillis != null && delayInMillis > 0) {
-            ctx.executor().schedule(new Runnable() {
-                @Override
-                public void run() {
-                    send(ctx, msg);
-                }
-            }, randomDelegator.nextInt(delayInMillis), TimeUnit.MILLISECONDS);
+            delay(ctx, msg);
+        } else {
+            RelayMetrics.relayed(msg);
+            written = true;
+            inboundChannel.write(msg).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (delayInMillis != null && delayInMillis > 0) {
+            if (delayedBytes < inboundChannel.config().getWriteBufferHighWaterMark() && inboundChannel.isWritable()) {
+                ctx.read();
+            } else {
+                pausedByDelay = true;
+                pauseReading(ctx.channel());
+            }
+            return;
+        }
+
+        if (written) {
+            written = false;
+            RelayMetrics.flushed();
+            inboundChannel.flush();
+        }
+        if (inboundChannel.isWritable()) {
+            ctx.read();
+        } else {
+            pauseReading(ctx.channel());
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // channel which writes to this one can read again
+        if (ctx.channel().isWritable()) {
+            resumeReading(inboundChannel);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    public static void pauseReading(Channel ch) {
+        RelayMetrics.paused();
+        if (ch.config().isAutoRead()) {
+            ch.attr(AUTO_READ_PAUSED).set(Boolean.TRUE);
+            ch.config().setAutoRead(false);
+        }
+    }
+
+    public static void resumeReading(Channel ch) {
+        if (ch.attr(AUTO_READ_PAUSED).getAndSet(null) != null) {
+            ch.config().setAutoRead(true);
         } else {
-            send(ctx, msg);
+            ch.read();
         }
     }
 
-    protected void send(final ChannelHandlerContext ctx, Object msg) {
-        inboundChannel.writeAndFlush(msg).addListener(new ChannelFutureListener() {
+    private void delay(final ChannelHandlerContext ctx, Object msg) {
+        if (delayedMessages == null) {
+            delayedMessages = new Object[16];
+            deadlines = new long[16];
+        } else if (size == delayedMessages.length) {
+            Object[] newMessages = new Object[size * 2];
+            long[] newDeadlines = new long[size * 2];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) % size;
+                newMessages[i] = delayedMessages[index];
+                newDeadlines[i] = deadlines[index];
+            }
+            delayedMessages = newMessages;
+            deadlines = newDeadlines;
+            head = 0;
+        }
+
+        long now = System.nanoTime();
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(randomDelegator.nextInt(delayInMillis));
+        if (size > 0 && deadline - lastDeadline < 0) {
+            deadline = lastDeadline;
+        }
+        lastDeadline = deadline;
+
+        int tail = (head + size) % delayedMessages.length;
+        delayedMessages[tail] = msg;
+        deadlines[tail] = deadline;
+        size++;
+        if (msg instanceof ByteBuf) {
+            delayedBytes += ((ByteBuf) msg).readableBytes();
+        }
+
+        if (timer == null) {
+            schedule(ctx, now);
+        }
+    }
+
+    private void schedule(final ChannelHandlerContext ctx, long now) {
+        timer = ctx.executor().schedule(new Runnable() {
             @Override
-            public void operationComplete(ChannelFuture future) {
-                if (future.isSuccess()) {
-                    ctx.channel().read();
-                } else {
-                    future.channel().close();
-                }
+            public void run() {
+                timer = null;
+                writeDelayed(ctx, System.nanoTime() + DEADLINE_SLACK);
             }
-        });
+        }, deadlines[head] - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void writeDelayed(ChannelHandlerContext ctx, long time) {
+        boolean wrote = false;
+        while (size > 0 && deadlines[head] - time <= 0) {
+            Object msg = delayedMessages[head];
+            delayedMessages[head] = null;
+            head = (head + 1) % delayedMessages.length;
+            size--;
+            if (msg instanceof ByteBuf) {
+                delayedBytes -= ((ByteBuf) msg).readableBytes();
+            }
+
+            RelayMetrics.relayed(msg);
+            inboundChannel.write(msg).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            wrote = true;
+        }
+        if (wrote) {
+            RelayMetrics.flushed();
+            inboundChannel.flush();
+        }
+
+        if (size > 0) {
+            schedule(ctx, System.nanoTime());
+        }
+        if (pausedByDelay && delayedBytes < inboundChannel.config().getWriteBufferLowWaterMark()
+                && inboundChannel.isWritable()) {
+            pausedByDelay = false;
+            resumeReading(ctx.channel());
+        }
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
+        if (size > 0) {
+            // deliver delayed data before closing
+            timer.cancel(false);
+            timer = null;
+            writeDelayed(ctx, lastDeadline);
+        }
         closeOnFlush(inboundChannel);
     }
 
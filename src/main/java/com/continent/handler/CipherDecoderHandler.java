@@ -1,11 +1,8 @@
 package com.continent.handler;
 
-import java.io.IOException;
 import java.util.List;
 
 import com.continent.service.Protocol;
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,17 +13,22 @@ import io.netty.handler.codec.ByteToMessageDecoder;
 
 public class CipherDecoderHandler extends ByteToMessageDecoder {
 
+    enum State {HEADER, PAYLOAD, RANDOM_TAIL, DISCARD}
+
     private static final Logger log = LoggerFactory.getLogger(CipherDecoderHandler.class);
-    
+
+    private static final int HEADER_SIZE = Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE;
+
     protected final CryptoService holder;
 
-    private int skipBytes;
-    private int readNextBytes;
-    
+    private State state = State.HEADER;
+    private int payloadBytes;
+    private int randomBytes;
+
     public CipherDecoderHandler(CryptoService cryptoService) {
         this.holder = cryptoService;
     }
-    
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         try {
@@ -38,67 +40,76 @@ public class CipherDecoderHandler extends ByteToMessageDecoder {
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf input, List<Object> out) throws Exception {
-        if (readNextBytes == 0 && skipBytes > 0) {
-            int skippedBytes = Math.min(skipBytes, input.readableBytes());
-            input.skipBytes(skippedBytes);
-            skipBytes -= skippedBytes;
+        if (state == State.DISCARD) {
+            input.skipBytes(input.readableBytes());
+            return;
         }
-        
-        decrypt(ctx, input, out);
-    }
 
-    protected void decrypt(ChannelHandlerContext ctx, ByteBuf input, List<Object> out) throws IOException {
-        ByteBuf output = null;
-        
-        if (readNextBytes > 0) {
-            int readBytes = Math.min(readNextBytes, input.readableBytes());
-            readNextBytes = readNextBytes - readBytes;
-            
-            output = ctx.alloc().buffer(readBytes);
-            holder.decrypt(new ByteBufOutputStream(output), new ByteBufInputStream(input), readBytes);
-        } else {
-            input.markReaderIndex();
-            if (input.readableBytes() < Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE) {
+        if (state == State.HEADER) {
+            if (input.readableBytes() < HEADER_SIZE) {
                 return;
             }
-            output = ctx.alloc().buffer(input.readableBytes());
-            
-            holder.decrypt(new ByteBufOutputStream(output), new ByteBufInputStream(input), Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE);
-            
-            if (!decrypt(ctx, input, output)) {
+
+            ByteBuf header = readDecrypted(ctx, input, HEADER_SIZE);
+            int packetLength = header.readInt();
+            int randomLength = header.readInt();
+            header.release();
+
+            if (packetLength < 0 || packetLength > Protocol.MAX_DATA_LENGTH) {
+                log.error("packetLength has wrong value: {}, channel: {}", packetLength, ctx.channel());
+                discard(ctx, input);
+                return;
+            }
+            if (randomLength < 0 || randomLength > Protocol.MAX_DATA_LENGTH) {
+                log.error("randomLength has wrong value: {}, channel: {}", randomLength, ctx.channel());
+                discard(ctx, input);
                 return;
             }
-        }
-        out.add(output);
-    }
 
-    protected boolean decrypt(ChannelHandlerContext ctx, ByteBuf input, ByteBuf output) throws IOException {
-        int packetLength = output.readInt();
-        if (packetLength < 0 || packetLength > 66000) {
-            log.error("packetLength has wrong value: {}, channel: {}", packetLength, ctx.channel());
-            output.release();
-            return false;
+            payloadBytes = packetLength;
+            randomBytes = randomLength;
+            state = State.PAYLOAD;
         }
-        int randomLength = output.readInt();
-        if (randomLength < 0 || randomLength > 66000) {
-            log.error("randomLength has wrong value: {}, channel: {}", randomLength, ctx.channel());
-            output.release();
-            return false;
+
+        if (state == State.PAYLOAD) {
+            int readBytes = Math.min(payloadBytes, input.readableBytes());
+            if (readBytes > 0) {
+                out.add(readDecrypted(ctx, input, readBytes));
+                payloadBytes -= readBytes;
+            }
+            if (payloadBytes > 0) {
+                return;
+            }
+            state = State.RANDOM_TAIL;
         }
-        
-        
-        if (input.readableBytes() < packetLength) {
-            readNextBytes = packetLength - input.readableBytes();
-            packetLength = input.readableBytes();
+
+        if (state == State.RANDOM_TAIL) {
+            int skippedBytes = Math.min(randomBytes, input.readableBytes());
+            input.skipBytes(skippedBytes);
+            randomBytes -= skippedBytes;
+            if (randomBytes == 0) {
+                state = State.HEADER;
+            }
         }
+    }
 
-        holder.decrypt(new ByteBufOutputStream(output), new ByteBufInputStream(input), packetLength);
+    private ByteBuf readDecrypted(ChannelHandlerContext ctx, ByteBuf input, int length) {
+        if (input.isReadOnly()) {
+            ByteBuf output = ctx.alloc().buffer(length);
+            input.readBytes(output, length);
+            holder.decrypt(output, output.readerIndex(), length);
+            return output;
+        }
 
-        int skippedBytes = Math.min(randomLength, input.readableBytes());
-        input.skipBytes(skippedBytes);
-        skipBytes = randomLength - skippedBytes;
+        // bytes are consumed right away, so they can be decrypted in the cumulation buffer itself
+        holder.decrypt(input, input.readerIndex(), length);
+        return input.readRetainedSlice(length);
+    }
 
-        return true;
+    private void discard(ChannelHandlerContext ctx, ByteBuf input) {
+        state = State.DISCARD;
+        input.skipBytes(input.readableBytes());
+        ctx.close();
     }
 
 }
@@ -1,5 +1,6 @@
 package com.continent.handler;
 
+import com.continent.random.PaddingGenerator;
 import com.continent.random.RandomDelegator;
 import com.continent.service.CryptoService;
 import com.continent.service.Protocol;
@@ -29,7 +30,8 @@ public abstract class CipherEncoderHandler extends MessageToByteEncoder<ByteBuf>
     private final byte[] sessionId;
     
     public CipherEncoderHandler(RandomDelegator randomGenerator, byte[] sessionId, CryptoService holder) {
-        super();
+        // heap buffer lets the frame be encrypted in place through its backing array
+        super(false);
         this.randomGenerator = randomGenerator;
         this.sessionId = sessionId;
         this.holder = holder;
@@ -68,16 +70,18 @@ public abstract class CipherEncoderHandler extends MessageToByteEncoder<ByteBuf>
     
     @Override
     protected void encode(ChannelHandlerContext ctx, ByteBuf input, ByteBuf output) throws Exception {
-        ByteBuf buf = ctx.alloc().buffer();
         int randomLength = 0;
         int dataLength = 0;
+        int encryptedIndex;
         if (firstPacket) {
             firstPacket = false;
 
             output.writeBytes(sessionId);
 
-            dataLength = encodeFirstHeader(buf);
+            encryptedIndex = output.writerIndex();
+            dataLength = encodeFirstHeader(output);
         } else {
+            encryptedIndex = output.writerIndex();
             dataLength = Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE;
         }
 
@@ -92,13 +96,12 @@ public abstract class CipherEncoderHandler extends MessageToByteEncoder<ByteBuf>
             randomLength = calcRandomDataLength(ctx.channel(), dataLength);
         }
         
-        buf.writeInt(input.readableBytes());
-        buf.writeInt(randomLength);
+        output.ensureWritable(Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE + input.readableBytes() + randomLength);
+        output.writeInt(input.readableBytes());
+        output.writeInt(randomLength);
+        output.writeBytes(input);
 
-        ByteBufOutputStream bf = new ByteBufOutputStream(output);
-        holder.encrypt(bf, new ByteBufInputStream(buf));
-        buf.release();
-        holder.encrypt(bf, new ByteBufInputStream(input));
+        holder.encrypt(output, encryptedIndex, output.writerIndex() - encryptedIndex);
         
         addRandomTail(output, randomLength);
     }
@@ -106,16 +109,7 @@ public abstract class CipherEncoderHandler extends MessageToByteEncoder<ByteBuf>
     protected abstract int encodeFirstHeader(ByteBuf buf);
     
     protected void addRandomTail(ByteBuf output, int randomLength) {
-        if (randomLength > 0) {
-            for (int i = 0; i < randomLength; ) {
-                for (int rnd = randomGenerator.nextInt(),
-                        n = Math.min(randomLength - i, Integer.SIZE/Byte.SIZE);
-                        n-- > 0; rnd >>= Byte.SIZE) {
-                    output.writeByte((byte)rnd);
-                    i++;
-                }
-            }
-        }
+        PaddingGenerator.write(output, randomLength, randomGenerator);
     }
 
     protected int calcRandomDataLength(Channel channel, ByteBuf input) {
@@ -0,0 +1,174 @@
+package com.continent.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.continent.service.SessionData;
+import com.continent.service.TokenBucket;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Schedules random packets of all tunnels on a single wheel timer.
+ * Due packets are passed to event loops in batches and sent only if bandwidth budget allows it.
+ * Budget is defined for all tunnels and for tunnels of each session.
+ * <p>
+ * Tunnel channel keeps scheduler and its session in {@link #SCHEDULER} and {@link #SESSION} attributes.
+ */
+public class NoiseScheduler {
+
+    public static final AttributeKey<NoiseScheduler> SCHEDULER = AttributeKey.valueOf("noiseScheduler");
+    public static final AttributeKey<SessionData> SESSION = AttributeKey.valueOf("noiseSession");
+
+    private static final long TICK_DURATION = 10;
+
+    static class Batch implements Runnable {
+
+        List<RandomPacketHandler> handlers = new ArrayList<>();
+
+        @Override
+        public void run() {
+            List<RandomPacketHandler> due;
+            synchronized (this) {
+                due = handlers;
+                handlers = new ArrayList<>();
+            }
+            for (RandomPacketHandler handler : due) {
+                handler.sendRandomPacket();
+            }
+        }
+
+    }
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(new DefaultThreadFactory("noise-scheduler", true),
+                                                                    TICK_DURATION, TimeUnit.MILLISECONDS);
+    private final ConcurrentMap<EventExecutor, Batch> batches = new ConcurrentHashMap<>();
+    private final TokenBucket budget;
+    private final long sessionBandwidth;
+
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * @param bandwidth bytes per second of random packets of all tunnels, <code>0</code> means unlimited
+     * @param sessionBandwidth bytes per second of random packets of each session, <code>0</code> means unlimited
+     */
+    public NoiseScheduler(long bandwidth, long sessionBandwidth) {
+        if (bandwidth > 0) {
+            budget = new TokenBucket(bandwidth);
+        } else {
+            budget = null;
+        }
+        this.sessionBandwidth = sessionBandwidth;
+    }
+
+    void schedule(final RandomPacketHandler handler, final EventExecutor executor, long delay) {
+        timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                Batch batch = batches.get(executor);
+                if (batch == null) {
+                    batch = new Batch();
+                    Batch oldBatch = batches.putIfAbsent(executor, batch);
+                    if (oldBatch != null) {
+                        batch = oldBatch;
+                    }
+                }
+
+                boolean first;
+                synchronized (batch) {
+                    first = batch.handlers.isEmpty();
+                    batch.handlers.add(handler);
+                }
+                if (first) {
+                    executor.execute(batch);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes random packet size from budgets of all tunnels and tunnel session.
+     * Nothing is taken from session budget if budget of all tunnels is exhausted.
+     *
+     * @return <code>true</code> if packet can be sent
+     */
+    boolean acquire(Channel tunnel, int size) {
+        SessionData session = tunnel.attr(SESSION).get();
+        TokenBucket sessionBudget = null;
+        if (sessionBandwidth > 0 && session != null) {
+            sessionBudget = sessionBudget(session);
+            if (!sessionBudget.tryAcquire(size)) {
+                suppressed.incrementAndGet();
+                return false;
+            }
+        }
+        if (budget != null && !budget.tryAcquire(size)) {
+            if (sessionBudget != null) {
+                sessionBudget.release(size);
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        packets.incrementAndGet();
+        bytes.addAndGet(size);
+        return true;
+    }
+
+    private TokenBucket sessionBudget(SessionData session) {
+        TokenBucket bucket = session.getNoiseBudget();
+        if (bucket == null) {
+            synchronized (session) {
+                bucket = session.getNoiseBudget();
+                if (bucket == null) {
+                    bucket = new TokenBucket(sessionBandwidth);
+                    session.setNoiseBudget(bucket);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    public long getPackets() {
+        return packets.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Returns amount of random packets which haven't been sent due to bandwidth limit.
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * Returns share of random data in all data relayed through tunnels.
+     */
+    public double getOverhead() {
+        long noise = bytes.get();
+        long total = noise + RelayMetrics.getBytes();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) noise / total;
+    }
+
+    public void shutdown() {
+        timer.stop();
+    }
+
+}
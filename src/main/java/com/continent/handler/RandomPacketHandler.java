@@ -10,6 +10,10 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Sends random packets to the tunnel while data is relayed through it.
+ * Packets are scheduled by {@link NoiseScheduler} of the tunnel channel if it's defined.
+ */
 public class RandomPacketHandler extends ChannelDuplexHandler {
 
     private static final Logger log = LoggerFactory.getLogger(RandomPacketHandler.class);
@@ -23,6 +27,7 @@ public class RandomPacketHandler extends ChannelDuplexHandler {
     
     private long sentData;
     private long lastSentTime = System.currentTimeMillis();
+    private ChannelHandlerContext ctx;
 
     public RandomPacketHandler(RandomDelegator randomGenerator, Channel inboundChannel) {
         this(randomGenerator, inboundChannel, 2000, 4000);
@@ -61,6 +66,7 @@ public class RandomPacketHandler extends ChannelDuplexHandler {
     }
 
     protected void schedule(final ChannelHandlerContext ctx) {
+        this.ctx = ctx;
         int maxDelay = minTimeout;
         if (System.currentTimeMillis() - lastSentTime < 1000
                 && sentData > 10000) {
@@ -68,27 +74,44 @@ public class RandomPacketHandler extends ChannelDuplexHandler {
         }
         int delay = randomGenerator.nextInt(maxDelay);
 
+        NoiseScheduler scheduler = inboundChannel.attr(NoiseScheduler.SCHEDULER).get();
+        if (scheduler != null) {
+            scheduler.schedule(this, ctx.executor(), delay);
+            return;
+        }
+
         ctx.executor().schedule(new Runnable() {
             @Override
             public void run() {
-                if (!inboundChannel.isActive()) {
-                    return;
-                }
-                
-                ByteBuf randomDataSize = Unpooled.copyInt(randomGenerator.nextInt(maxPacketSize));
-                ByteBuf randomPacket = Unpooled.wrappedBuffer(CipherEncoderHandler.RANDOM_PACKET_HEADER.copy(), randomDataSize);
-                
-                ChannelFuture f = inboundChannel.writeAndFlush(randomPacket);
-                f.addListener(new ChannelFutureListener() {
-                    @Override
-                    public void operationComplete(ChannelFuture future) throws Exception {
-                        if (inboundChannel.isActive()) {
-                            schedule(ctx);
-                        }
-                    }
-                });
+                sendRandomPacket();
             }
         }, delay, TimeUnit.MILLISECONDS);
     }
 
+    void sendRandomPacket() {
+        if (!inboundChannel.isActive()) {
+            return;
+        }
+
+        int size = randomGenerator.nextInt(maxPacketSize);
+        NoiseScheduler scheduler = inboundChannel.attr(NoiseScheduler.SCHEDULER).get();
+        if (scheduler != null && !scheduler.acquire(inboundChannel, size)) {
+            schedule(ctx);
+            return;
+        }
+
+        ByteBuf randomDataSize = Unpooled.copyInt(size);
+        ByteBuf randomPacket = Unpooled.wrappedBuffer(CipherEncoderHandler.RANDOM_PACKET_HEADER.copy(), randomDataSize);
+
+        ChannelFuture f = inboundChannel.writeAndFlush(randomPacket);
+        f.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (inboundChannel.isActive()) {
+                    schedule(ctx);
+                }
+            }
+        });
+    }
+
 }
@@ -0,0 +1,55 @@
+package com.continent.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Counters of data relayed between tunnels and their peers.
+ * Updated by all event loops, so counters are striped to avoid contention.
+ */
+public final class RelayMetrics {
+
+    private static final LongCounter bytes = PlatformDependent.newLongCounter();
+    private static final LongCounter messages = PlatformDependent.newLongCounter();
+    private static final LongCounter flushes = PlatformDependent.newLongCounter();
+    private static final LongCounter pauses = PlatformDependent.newLongCounter();
+
+    private RelayMetrics() {
+    }
+
+    public static void relayed(Object msg) {
+        messages.increment();
+        if (msg instanceof ByteBuf) {
+            bytes.add(((ByteBuf) msg).readableBytes());
+        }
+    }
+
+    public static void flushed() {
+        flushes.increment();
+    }
+
+    public static void paused() {
+        pauses.increment();
+    }
+
+    public static long getBytes() {
+        return bytes.value();
+    }
+
+    public static long getMessages() {
+        return messages.value();
+    }
+
+    public static long getFlushes() {
+        return flushes.value();
+    }
+
+    /**
+     * Returns how many times reading has been paused because peer channel wasn't writable.
+     */
+    public static long getPauses() {
+        return pauses.value();
+    }
+
+}
@@ -3,14 +3,11 @@ package com.continent.handler.client;
 import com.continent.handler.CipherDecoderHandler;
 import com.continent.service.*;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.List;
 
 public class CipherClientDecoderHandler extends CipherDecoderHandler {
@@ -18,32 +15,32 @@ public class CipherClientDecoderHandler extends CipherDecoderHandler {
     private static final Logger log = LoggerFactory.getLogger(CipherClientDecoderHandler.class);
     
     private final HandshakeService handshakeService;
-    private final List<Object> serverCiphers;
-    private final byte[] serverKeys;
+    private final KeySchedule serverKeySchedule;
 
     private boolean firstPacket = true;
     
-    public CipherClientDecoderHandler(HandshakeService handshakeService, CryptoService holder, List<Object> serverCiphers, byte[] serverKeys) {
+    public CipherClientDecoderHandler(HandshakeService handshakeService, CryptoService holder, KeySchedule serverKeySchedule) {
         super(holder);
         
         this.handshakeService = handshakeService;
-        this.serverCiphers = serverCiphers;
-        this.serverKeys = serverKeys;
+        this.serverKeySchedule = serverKeySchedule;
     }
     
     @Override
-    protected void decrypt(ChannelHandlerContext ctx, ByteBuf input, List<Object> out) throws IOException {
+    protected void decode(ChannelHandlerContext ctx, ByteBuf input, List<Object> out) throws Exception {
         if (firstPacket) {
-            if (input.readableBytes() < SessionId.SIZE + Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE) {
+            if (input.readableBytes() < SessionId.SIZE) {
                 return;
             }
             
-            byte[] sessionId = new byte[SessionId.SIZE];
-            input.readBytes(sessionId);
-
-            SessionData data = handshakeService.getServerSession(sessionId);
-            if (!handshakeService.checkServerSession(sessionId)) {
-                log.error("Wrong session signature! {} Channel: {}. Trying to re-handshake...", ByteBufUtil.hexDump(sessionId), ctx.channel());
+            long sessionIdHigh = input.readLong();
+            long sessionIdLow = input.readLong();
+
+            byte[] iv = handshakeService.useServerSession(sessionIdHigh, sessionIdLow);
+            if (iv == null) {
+                log.error("Wrong session signature! {} Channel: {}. Trying to re-handshake...",
+                        ByteBufUtil.hexDump(input, input.readerIndex() - SessionId.SIZE, SessionId.SIZE), ctx.channel());
+                input.skipBytes(input.readableBytes());
                 handshakeService.connect();
                 handshakeService.close(ctx);
                 return;
@@ -51,21 +48,10 @@ public class CipherClientDecoderHandler extends CipherDecoderHandler {
             
             firstPacket = false;
 
-            holder.setDecoderCiphers(serverCiphers, data.getIvData(), serverKeys);
-
-            ByteBuf output = ctx.alloc().buffer(input.readableBytes());
-            
-            holder.decrypt(new ByteBufOutputStream(output), new ByteBufInputStream(input), Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE);
-            
-            if (!decrypt(ctx, input, output)) {
-                return;
-            }
-            
-            out.add(output);
-            return;
+            holder.setDecoderCiphers(serverKeySchedule, iv, ctx.executor());
         }
         
-        super.decrypt(ctx, input, out);
+        super.decode(ctx, input, out);
     }
     
 }
@@ -11,19 +11,30 @@ public class CipherClientEncoderHandler extends CipherEncoderHandler {
 
     public static final byte SOCKS5_TUNNEL = 1;
     public static final byte PORT_MAPPING_TUNNEL = 2;
+    public static final byte MULTIPLEXED_TUNNEL = 3;
     
+    private final byte tunnelType;
     private final String mappedHost;
     
     public CipherClientEncoderHandler(RandomDelegator randomGenerator,
                                       byte[] sessionId, String mappedHost, CryptoService holder) {
+        this(randomGenerator, sessionId, mappedHost != null ? PORT_MAPPING_TUNNEL : SOCKS5_TUNNEL, mappedHost, holder);
+    }
+    
+    public CipherClientEncoderHandler(RandomDelegator randomGenerator,
+                                      byte[] sessionId, byte tunnelType, String mappedHost, CryptoService holder) {
         super(randomGenerator, sessionId, holder);
         
+        this.tunnelType = tunnelType;
         this.mappedHost = mappedHost;
     }
     
     @Override
     protected int encodeFirstHeader(ByteBuf buf) {
-        if (mappedHost != null) {
+        if (tunnelType == MULTIPLEXED_TUNNEL) {
+            buf.writeByte(MULTIPLEXED_TUNNEL);
+            return SessionId.SIZE + Protocol.TUNNEL_TYPE_SIZE + Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE;
+        } else if (tunnelType == PORT_MAPPING_TUNNEL) {
             buf.writeByte(PORT_MAPPING_TUNNEL);
             byte[] mappedHostBytes = mappedHost.getBytes();
             buf.writeByte(mappedHostBytes.length);
@@ -0,0 +1,174 @@
+package com.continent.handler.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.continent.handler.mux.MultiplexedStream;
+import com.continent.handler.mux.StreamFrame;
+import com.continent.handler.mux.StreamMultiplexer;
+import com.continent.service.SessionData;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Client side of multiplexed tunnel. Streams are opened with odd ids,
+ * OPEN frames requested before tunnel is established are sent once it becomes active.
+ */
+public class ClientStreamMultiplexer extends StreamMultiplexer {
+
+    private static final int IDLE_TIMEOUT = 60;
+
+    private final SessionData sessionData;
+    private final AtomicInteger openingStreams = new AtomicInteger();
+    private final List<StreamFrame> pendingFrames = new ArrayList<>();
+
+    private volatile Channel channel;
+    private volatile boolean retired;
+    private boolean active;
+    private int nextStreamId = 1;
+    private ScheduledFuture<?> idleCheck;
+
+    public ClientStreamMultiplexer(SessionData sessionData) {
+        this.sessionData = sessionData;
+    }
+
+    public void setChannel(Channel channel) {
+        this.channel = channel;
+        // covers failed connection attempt as well, channel never becomes active then
+        channel.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                retired = true;
+                pendingFrames.clear();
+                closeStreams();
+            }
+        });
+    }
+
+    public SessionData getSessionData() {
+        return sessionData;
+    }
+
+    public boolean isOpen() {
+        return !retired && channel.isOpen();
+    }
+
+    public int getLoad() {
+        return getStreamsAmount() + openingStreams.get();
+    }
+
+    public void open(final String target, final Channel peer, final Promise<MultiplexedStream> promise) {
+        openingStreams.incrementAndGet();
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                openingStreams.decrementAndGet();
+                cancelIdleCheck();
+                if (!channel.isOpen()) {
+                    promise.tryFailure(new IllegalStateException("Tunnel " + channel + " has been closed"));
+                    return;
+                }
+
+                int streamId = nextStreamId;
+                nextStreamId += 2;
+                final MultiplexedStream stream = new MultiplexedStream(streamId, channel, ClientStreamMultiplexer.this, peer, promise);
+                streams.put(streamId, stream);
+                peer.closeFuture().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        stream.finish();
+                    }
+                });
+
+                StreamFrame frame = StreamFrame.open(streamId, target);
+                if (active) {
+                    channel.writeAndFlush(frame);
+                } else {
+                    pendingFrames.add(frame);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new streams, tunnel is closed once its streams are done.
+     */
+    public void retire() {
+        retired = true;
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (getLoad() == 0) {
+                    channel.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        active = true;
+        for (StreamFrame frame : pendingFrames) {
+            ctx.write(frame);
+        }
+        pendingFrames.clear();
+        ctx.flush();
+
+        super.channelActive(ctx);
+    }
+
+    @Override
+    protected void onOpen(ChannelHandlerContext ctx, int streamId, ByteBuf target) {
+        // server doesn't open streams
+        ctx.writeAndFlush(StreamFrame.rst(streamId));
+    }
+
+    @Override
+    protected void onOpenAck(MultiplexedStream stream) {
+        stream.opened(stream.getPeer());
+    }
+
+    @Override
+    protected void onEmpty() {
+        if (retired) {
+            retire();
+            return;
+        }
+
+        // streams may be removed from peer channel threads
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                cancelIdleCheck();
+                if (getLoad() > 0) {
+                    return;
+                }
+
+                idleCheck = channel.eventLoop().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        idleCheck = null;
+                        if (getLoad() == 0) {
+                            retire();
+                        }
+                    }
+                }, IDLE_TIMEOUT, TimeUnit.SECONDS);
+            }
+        });
+    }
+
+    private void cancelIdleCheck() {
+        if (idleCheck != null) {
+            idleCheck.cancel(false);
+            idleCheck = null;
+        }
+    }
+
+}
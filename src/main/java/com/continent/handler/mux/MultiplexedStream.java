@@ -0,0 +1,188 @@
+package com.continent.handler.mux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.continent.server.SocksServerUtils;
+import com.continent.service.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Logical stream relayed between tunnel and peer channel.
+ * <p>
+ * Each side may have at most {@link Protocol#STREAM_WINDOW_SIZE} bytes in flight.
+ * Peer channel is read only while window is open and tunnel is writable,
+ * receiver returns credit once data has been written to its peer channel.
+ */
+public class MultiplexedStream {
+
+    private final int id;
+    private final Channel tunnel;
+    private final StreamMultiplexer multiplexer;
+    private volatile Channel peer;
+    private final Promise<MultiplexedStream> openPromise;
+
+    private final AtomicInteger sendWindow = new AtomicInteger(Protocol.STREAM_WINDOW_SIZE);
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final AtomicInteger consumedBytes = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public MultiplexedStream(int id, Channel tunnel, StreamMultiplexer multiplexer, Channel peer, Promise<MultiplexedStream> openPromise) {
+        this.id = id;
+        this.tunnel = tunnel;
+        this.multiplexer = multiplexer;
+        this.peer = peer;
+        this.openPromise = openPromise;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Channel getTunnel() {
+        return tunnel;
+    }
+
+    public Channel getPeer() {
+        return peer;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public void opened(Channel peer) {
+        this.peer = peer;
+        if (closed.get()) {
+            peer.close();
+            return;
+        }
+
+        if (openPromise != null) {
+            openPromise.trySuccess(this);
+        }
+    }
+
+    /**
+     * Sends data read from peer channel. Next read is requested only if send window is still open
+     * and tunnel is writable.
+     */
+    public void send(ByteBuf data) {
+        int size = data.readableBytes();
+        tunnel.write(StreamFrame.data(id, data));
+
+        if (sendWindow.addAndGet(-size) > 0 && tunnel.isWritable()) {
+            peer.read();
+            return;
+        }
+
+        paused.set(true);
+        // window update or tunnel writability change could arrive before the flag was set
+        resume();
+    }
+
+    void resume() {
+        if (sendWindow.get() > 0 && tunnel.isWritable() && paused.compareAndSet(true, false)) {
+            peer.read();
+        }
+    }
+
+    public void flush() {
+        tunnel.flush();
+    }
+
+    void onData(ByteBuf data) {
+        if (peer == null) {
+            // data before stream has been opened
+            data.release();
+            reset();
+            return;
+        }
+
+        final int size = data.readableBytes();
+        // flushed by multiplexer once tunnel read is complete
+        peer.write(data).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess() || closed.get()) {
+                    return;
+                }
+
+                if (consumedBytes.addAndGet(size) >= Protocol.STREAM_WINDOW_SIZE / 2) {
+                    int credit = consumedBytes.getAndSet(0);
+                    if (credit > 0) {
+                        tunnel.writeAndFlush(StreamFrame.windowUpdate(id, credit));
+                    }
+                }
+            }
+        });
+    }
+
+    void flushPeer() {
+        Channel channel = peer;
+        if (channel != null) {
+            channel.flush();
+        }
+    }
+
+    void onWindowUpdate(int credit) {
+        sendWindow.addAndGet(credit);
+        resume();
+    }
+
+    /**
+     * Peer channel has been closed, remote side closes its end after pending data is written.
+     */
+    public void finish() {
+        if (closed.compareAndSet(false, true)) {
+            multiplexer.remove(this);
+            tunnel.writeAndFlush(StreamFrame.fin(id));
+        }
+    }
+
+    /**
+     * Aborts stream on both sides.
+     */
+    public void reset() {
+        if (closed.compareAndSet(false, true)) {
+            multiplexer.remove(this);
+            tunnel.writeAndFlush(StreamFrame.rst(id));
+            close(false);
+        }
+    }
+
+    void onFin() {
+        if (closed.compareAndSet(false, true)) {
+            multiplexer.remove(this);
+            close(true);
+        }
+    }
+
+    void onRst() {
+        if (closed.compareAndSet(false, true)) {
+            multiplexer.remove(this);
+            close(false);
+        }
+    }
+
+    private void close(boolean graceful) {
+        if (openPromise != null && openPromise.tryFailure(new IllegalStateException("Stream " + id + " has been rejected"))) {
+            return;
+        }
+
+        Channel channel = peer;
+        if (channel == null) {
+            return;
+        }
+        if (graceful) {
+            SocksServerUtils.closeOnFlush(channel);
+        } else {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.continent.handler.mux;
+
+import java.nio.charset.StandardCharsets;
+
+import com.continent.service.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Frame of a logical stream carried inside multiplexed tunnel.
+ * <p>
+ * Wire format: stream id (4 bytes), type (1 byte), payload length (4 bytes), payload.
+ */
+public class StreamFrame {
+
+    private final int streamId;
+    private final byte type;
+    private final ByteBuf payload;
+
+    public StreamFrame(int streamId, byte type, ByteBuf payload) {
+        this.streamId = streamId;
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public static StreamFrame open(int streamId, String target) {
+        return new StreamFrame(streamId, Protocol.STREAM_OPEN, Unpooled.copiedBuffer(target, StandardCharsets.UTF_8));
+    }
+
+    public static StreamFrame openAck(int streamId) {
+        return new StreamFrame(streamId, Protocol.STREAM_OPEN_ACK, Unpooled.EMPTY_BUFFER);
+    }
+
+    public static StreamFrame data(int streamId, ByteBuf data) {
+        return new StreamFrame(streamId, Protocol.STREAM_DATA, data);
+    }
+
+    public static StreamFrame windowUpdate(int streamId, int credit) {
+        return new StreamFrame(streamId, Protocol.STREAM_WINDOW_UPDATE, Unpooled.copyInt(credit));
+    }
+
+    public static StreamFrame fin(int streamId) {
+        return new StreamFrame(streamId, Protocol.STREAM_FIN, Unpooled.EMPTY_BUFFER);
+    }
+
+    public static StreamFrame rst(int streamId) {
+        return new StreamFrame(streamId, Protocol.STREAM_RST, Unpooled.EMPTY_BUFFER);
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamFrame [streamId=" + streamId + ", type=" + type + ", length=" + payload.readableBytes() + "]";
+    }
+
+}
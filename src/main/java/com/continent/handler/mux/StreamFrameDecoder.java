@@ -0,0 +1,38 @@
+package com.continent.handler.mux;
+
+import java.util.List;
+
+import com.continent.service.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+public class StreamFrameDecoder extends ByteToMessageDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamFrameDecoder.class);
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        while (in.readableBytes() >= Protocol.STREAM_FRAME_HEADER_SIZE) {
+            int length = in.getInt(in.readerIndex() + Protocol.STREAM_ID_SIZE + Protocol.STREAM_FRAME_TYPE_SIZE);
+            if (length < 0 || length > Protocol.MAX_DATA_LENGTH) {
+                log.error("stream frame length has wrong value: {}, channel: {}", length, ctx.channel());
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                return;
+            }
+            if (in.readableBytes() < Protocol.STREAM_FRAME_HEADER_SIZE + length) {
+                return;
+            }
+
+            int streamId = in.readInt();
+            byte type = in.readByte();
+            in.skipBytes(Protocol.DATA_LENGTH_SIZE);
+            out.add(new StreamFrame(streamId, type, in.readRetainedSlice(length)));
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.continent.handler.mux;
+
+import java.util.List;
+
+import com.continent.service.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+@ChannelHandler.Sharable
+public class StreamFrameEncoder extends MessageToMessageEncoder<StreamFrame> {
+
+    public static final StreamFrameEncoder INSTANCE = new StreamFrameEncoder();
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, StreamFrame frame, List<Object> out) throws Exception {
+        ByteBuf payload = frame.getPayload();
+        ByteBuf header = ctx.alloc().buffer(Protocol.STREAM_FRAME_HEADER_SIZE);
+        header.writeInt(frame.getStreamId());
+        header.writeByte(frame.getType());
+        header.writeInt(payload.readableBytes());
+
+        // payload is copied once by cipher encoder, so it is just appended here
+        out.add(ctx.alloc().compositeBuffer(2).addComponents(true, header, payload));
+    }
+
+}
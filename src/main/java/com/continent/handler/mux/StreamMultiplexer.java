@@ -0,0 +1,151 @@
+package com.continent.handler.mux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.continent.service.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches frames received through multiplexed tunnel to their streams.
+ */
+public abstract class StreamMultiplexer extends ChannelInboundHandlerAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamMultiplexer.class);
+
+    protected final ConcurrentMap<Integer, MultiplexedStream> streams = new ConcurrentHashMap<>();
+
+    // streams written to their peer channels during current tunnel read
+    private final Set<MultiplexedStream> unflushed = new LinkedHashSet<>();
+
+    public int getStreamsAmount() {
+        return streams.size();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof StreamFrame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        StreamFrame frame = (StreamFrame) msg;
+        ByteBuf payload = frame.getPayload();
+        if (frame.getType() == Protocol.STREAM_OPEN) {
+            try {
+                onOpen(ctx, frame.getStreamId(), payload);
+            } finally {
+                payload.release();
+            }
+            return;
+        }
+
+        MultiplexedStream stream = streams.get(frame.getStreamId());
+        if (stream == null) {
+            // stream has been already closed on this side
+            payload.release();
+            return;
+        }
+
+        switch (frame.getType()) {
+            case Protocol.STREAM_DATA:
+                stream.onData(payload);
+                unflushed.add(stream);
+                return;
+            case Protocol.STREAM_OPEN_ACK:
+                payload.release();
+                onOpenAck(stream);
+                return;
+            case Protocol.STREAM_WINDOW_UPDATE:
+                int credit = -1;
+                try {
+                    if (payload.readableBytes() == 4) {
+                        credit = payload.readInt();
+                    }
+                } finally {
+                    payload.release();
+                }
+                if (credit <= 0) {
+                    log.error("Invalid window update for stream {}, channel: {}", stream.getId(), ctx.channel());
+                    stream.reset();
+                    return;
+                }
+                stream.onWindowUpdate(credit);
+                return;
+            case Protocol.STREAM_FIN:
+                payload.release();
+                stream.onFin();
+                return;
+            case Protocol.STREAM_RST:
+                payload.release();
+                stream.onRst();
+                return;
+            default:
+                payload.release();
+                log.error("Unknown stream frame type: {}, channel: {}", frame.getType(), ctx.channel());
+                ctx.close();
+        }
+    }
+
+    protected abstract void onOpen(ChannelHandlerContext ctx, int streamId, ByteBuf target);
+
+    protected abstract void onOpenAck(MultiplexedStream stream);
+
+    void remove(MultiplexedStream stream) {
+        streams.remove(stream.getId(), stream);
+        if (streams.isEmpty()) {
+            onEmpty();
+        }
+    }
+
+    protected void onEmpty() {
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        if (!unflushed.isEmpty()) {
+            for (MultiplexedStream stream : unflushed) {
+                stream.flushPeer();
+            }
+            unflushed.clear();
+        }
+        ctx.flush();
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            for (MultiplexedStream stream : streams.values()) {
+                stream.resume();
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closeStreams();
+        super.channelInactive(ctx);
+    }
+
+    protected void closeStreams() {
+        for (MultiplexedStream stream : new ArrayList<>(streams.values())) {
+            stream.onRst();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        log.error("multiplexed tunnel error, channel: " + ctx.channel(), cause);
+        ctx.close();
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.continent.handler.mux;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Relays data from peer channel into its stream.
+ */
+public class StreamRelayHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamRelayHandler.class);
+
+    private final MultiplexedStream stream;
+
+    public StreamRelayHandler(MultiplexedStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (stream.isClosed()) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+
+        stream.send((ByteBuf) msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        stream.flush();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        stream.finish();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        log.error("stream " + stream.getId() + " error", cause);
+        stream.reset();
+    }
+
+}
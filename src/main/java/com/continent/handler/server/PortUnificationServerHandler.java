@@ -8,19 +8,11 @@ import com.continent.service.SessionId;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
-import io.netty.handler.ssl.ApplicationProtocolConfig;
-import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.security.cert.CertificateException;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
@@ -30,8 +22,6 @@ public class PortUnificationServerHandler extends ByteToMessageDecoder {
 
     private static final Logger log = LoggerFactory.getLogger(PortUnificationServerHandler.class);
     
-    private static final SelfSignedCertificate ssc;
-
     private Future<?> closeChannelFuture;
     
     private final RandomService randomService;
@@ -39,20 +29,14 @@ public class PortUnificationServerHandler extends ByteToMessageDecoder {
     private int delayInMillis;
 
     private final HandshakeService handshakeService;
+    private final SslContext sslContext;
     private Set<String> whiteListedHosts;
     private boolean tcpNodelay;
     private boolean useRandomPackets;
     
-    static {
-        try {
-            ssc = new SelfSignedCertificate("localhost");
-        } catch (CertificateException e) {
-            throw new IllegalStateException(e);
-        }
-    }
-    
-    public PortUnificationServerHandler(HandshakeService handshakeService, RandomService randomService, int delayInMillis, Set<String> whiteListedHosts, boolean tcpNodelay, boolean useRandomPackets) {
+    public PortUnificationServerHandler(HandshakeService handshakeService, SslContext sslContext, RandomService randomService, int delayInMillis, Set<String> whiteListedHosts, boolean tcpNodelay, boolean useRandomPackets) {
         this.handshakeService = handshakeService;
+        this.sslContext = sslContext;
         this.randomService = randomService;
         this.delayInMillis = delayInMillis;
         this.whiteListedHosts = whiteListedHosts;
@@ -79,23 +63,11 @@ public class PortUnificationServerHandler extends ByteToMessageDecoder {
             return;
         }
 
-        in.markReaderIndex();
-        byte[] sessionId = new byte[SessionId.SIZE];
-        in.readBytes(sessionId);
-        in.resetReaderIndex();
-
         boolean useSsl = false;
-        if (handshakeService.getClientSession(sessionId) == null) {
+        if (handshakeService.getClientSession(in, in.readerIndex()) == null) {
             useSsl = SslHandler.isEncrypted(in);
             if (useSsl) {
-                ApplicationProtocolConfig apn = new ApplicationProtocolConfig(
-                        Protocol.ALPN, SelectorFailureBehavior.CHOOSE_MY_LAST_PROTOCOL,
-                        SelectedListenerFailureBehavior.ACCEPT, Arrays.asList("http/1.1"));
-                SslContext sslCtx = SslContextBuilder
-                        .forServer(ssc.certificate(), ssc.privateKey())
-                        .applicationProtocolConfig(apn)
-                        .build();
-                ctx.pipeline().addLast("sslHandler", sslCtx.newHandler(ctx.alloc()));
+                ctx.pipeline().addLast("sslHandler", sslContext.newHandler(ctx.alloc()));
             }
         }
 
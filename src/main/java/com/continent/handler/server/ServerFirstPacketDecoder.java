@@ -2,7 +2,10 @@ package com.continent.handler.server;
 
 import com.continent.handler.CipherDecoderHandler;
 import com.continent.handler.HandshakePacketSplitter;
+import com.continent.handler.NoiseScheduler;
 import com.continent.handler.client.CipherClientEncoderHandler;
+import com.continent.handler.mux.StreamFrameDecoder;
+import com.continent.handler.mux.StreamFrameEncoder;
 import com.continent.random.RandomDelegator;
 import com.continent.random.RandomService;
 import com.continent.server.SocksServerHandler;
@@ -13,8 +16,6 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -31,10 +32,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
 
-    enum State {DATA, FIRST_STEP, SECOND_STEP}
+    enum State {DATA, MAPPED_HOST, FIRST_STEP, SECOND_STEP}
     
     private static final Logger log = LoggerFactory.getLogger(ServerFirstPacketDecoder.class);
     
@@ -43,6 +45,12 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
     private State state = State.DATA;
 
     private int skipBytes;
+
+    private SessionData sessionData;
+    private CryptoService cryptoService;
+    private byte[] newSessionId;
+    private RandomDelegator randomGenerator;
+    private int addressLength;
     private Future<?> closeChannelFuture;
 
     private boolean useSSL;
@@ -91,19 +99,28 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
             if (in.readableBytes() < SessionId.SIZE + Protocol.TUNNEL_TYPE_SIZE + Protocol.DATA_LENGTH_SIZE + Protocol.RANDOM_DATA_LENGTH_SIZE) {
                 return;
             }
-            in.markReaderIndex();
 
             closeChannelFuture.cancel(false);
 
-            byte[] sessionId = new byte[SessionId.SIZE];
-            in.readBytes(sessionId);
-
-            final SessionData sessionData = handshakeService.getClientSession(sessionId);
+            long sessionIdHigh = in.getLong(in.readerIndex());
+            long sessionIdLow = in.getLong(in.readerIndex() + 8);
+            sessionData = handshakeService.getClientSession(sessionIdHigh, sessionIdLow);
             if (sessionData != null) {
-                final CryptoService cryptoService = new CryptoService();
+                byte[] clientIV = handshakeService.useClientSession(sessionIdHigh, sessionIdLow, sessionData);
+                if (clientIV == null) {
+                    handshakeService.close(ctx);
+                    log.error("Already received message was received again. Someone is probing this server." +
+                                    " Channel: {}, Session: {}. Closing this channel!",
+                            ctx.channel(), ByteBufUtil.hexDump(in, in.readerIndex(), SessionId.SIZE));
+                    in.skipBytes(in.readableBytes());
+                    return;
+                }
+                in.skipBytes(SessionId.SIZE);
+
+                cryptoService = new CryptoService();
 
                 byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
-                byte[] newSessionId = new byte[SessionId.SIZE];
+                newSessionId = new byte[SessionId.SIZE];
 
                 sessionData.getLock().lock();
                 sessionData.getServerSessionGenerator().nextBytes(newSessionId);
@@ -112,16 +129,12 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
 
                 handshakeService.generateNewClientSessionId(sessionData);
 
-                cryptoService.setEncoderCiphers(sessionData.getServerCiphers(), sessionData.getServerKey(), iv);
-                cryptoService.setDecoderCiphers(sessionData.getClientCiphers(), sessionData.getIvData(), sessionData.getClientKey());
+                cryptoService.setEncoderCiphers(sessionData.getServerKeySchedule(), iv, ctx.executor());
+                cryptoService.setDecoderCiphers(sessionData.getClientKeySchedule(), clientIV, ctx.executor());
                 
-                ByteBuf tunnel = ctx.alloc().buffer(Protocol.TUNNEL_TYPE_SIZE);
-                cryptoService.decrypt(new ByteBufOutputStream(tunnel), new ByteBufInputStream(in), Protocol.TUNNEL_TYPE_SIZE);
-
-                byte tunnelType = tunnel.readByte();
-                tunnel.release();
+                byte tunnelType = cryptoService.decrypt(in.readByte());
 
-                RandomDelegator randomGenerator = randomService.createRandomDataGenerator();
+                randomGenerator = randomService.createRandomDataGenerator();
 
                 if (tunnelType == CipherClientEncoderHandler.SOCKS5_TUNNEL) {
                     
@@ -134,31 +147,23 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
                                     sessionData.getRandomTimeouts())
                             );
                     
-                } else if (tunnelType == CipherClientEncoderHandler.PORT_MAPPING_TUNNEL) {
-                    
-                    ByteBuf addressLen = ctx.alloc().buffer(1);
-                    cryptoService.decrypt(new ByteBufOutputStream(addressLen), new ByteBufInputStream(in), 1);
-                    byte addressLength = addressLen.readByte();
-                    addressLen.release();
-                    
-                    if (in.readableBytes() < addressLength) {
-                        in.resetReaderIndex();
-                        return;
-                    }
-                    
-                    ByteBuf address = ctx.alloc().buffer(addressLength);
-                    cryptoService.decrypt(new ByteBufOutputStream(address), new ByteBufInputStream(in), addressLength);
-
-                    String addr = address.toString(StandardCharsets.UTF_8);
-                    address.release();
-                    URI hostAddr = URI.create("//" + addr);
+                } else if (tunnelType == CipherClientEncoderHandler.MULTIPLEXED_TUNNEL) {
                     
                     ctx.pipeline().remove(HandshakePacketSplitter.class);
                     ctx.pipeline().remove(this);
                     
-                    Promise<Channel> connectionPromise = ctx.executor().newPromise();
-                    ctx.pipeline().addLast(new ServerMappedHostHandshakeHandler(connectionPromise));
-                    ctx.pipeline().addLast(new ServerMappedHostTunnelHandler(hostAddr.getHost(), hostAddr.getPort(), connectionPromise, randomGenerator, delayInMillis, useRandomPackets));
+                    ctx.pipeline().addLast(
+                            new StreamFrameDecoder(),
+                            StreamFrameEncoder.INSTANCE,
+                            new ServerStreamMultiplexer(randomGenerator, whiteListedHosts, tcpNodelay,
+                                    sessionData.getRandomTimeouts())
+                            );
+                    
+                } else if (tunnelType == CipherClientEncoderHandler.PORT_MAPPING_TUNNEL) {
+                    
+                    addressLength = cryptoService.decrypt(in.readByte());
+                    // session id has been used already, so wait for address without decoding it again
+                    state = State.MAPPED_HOST;
                     
                 } else {
                     handshakeService.close(ctx);
@@ -166,48 +171,36 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
                     return;
                 }
 
-                if (!handshakeService.checkClientSession(sessionId)) {
-                    handshakeService.close(ctx);
-                    log.error("Already received message was received again. Someone is probing this server." +
-                                    " Channel: {}, Session: {}. Closing this channel!",
-                            ctx.channel(), ByteBufUtil.hexDump(sessionId));
+                if (state == State.DATA) {
+                    startTunnel(ctx, in);
                     return;
                 }
+            } else {
+                state = State.FIRST_STEP;
+            }
+        }
 
-                sessionData.updateLastAccessTime();
-                sessionData.incUsage();
-
-                ctx.channel().closeFuture().addListener(new ChannelFutureListener() {
-                    @Override
-                    public void operationComplete(ChannelFuture future) throws Exception {
-                    sessionData.updateLastAccessTime();
-                    sessionData.decUsage();
-                    }
-                });
-
-                CipherServerEncoderHandler encoderHandler = new CipherServerEncoderHandler(randomGenerator, newSessionId, cryptoService);
-                CipherDecoderHandler decoderHandler = new CipherDecoderHandler(cryptoService);
-                
-                if (useSSL) {
-                    ctx.pipeline().addAfter("sslHandler", "encoder", encoderHandler);
-                    ctx.pipeline().addAfter("sslHandler", "decoder", decoderHandler);
-                } else {
-                    ctx.pipeline().addFirst("encoder", encoderHandler);
-                    ctx.pipeline().addFirst("decoder", decoderHandler);
-                }
-                
-                in.retain();
-                
-                if (useSSL) {
-                    ctx.pipeline().firstContext().fireChannelRead(in);
-                } else {
-                    ctx.pipeline().fireChannelRead(in);
-                }
+        if (state == State.MAPPED_HOST) {
+            if (in.readableBytes() < addressLength) {
                 return;
             }
             
-            in.resetReaderIndex();
-            state = State.FIRST_STEP;
+            ByteBuf address = in.readBytes(addressLength);
+            cryptoService.decrypt(address, address.readerIndex(), addressLength);
+
+            String addr = address.toString(StandardCharsets.UTF_8);
+            address.release();
+            URI hostAddr = URI.create("//" + addr);
+            
+            ctx.pipeline().remove(HandshakePacketSplitter.class);
+            ctx.pipeline().remove(this);
+            
+            Promise<Channel> connectionPromise = ctx.executor().newPromise();
+            ctx.pipeline().addLast(new ServerMappedHostHandshakeHandler(connectionPromise));
+            ctx.pipeline().addLast(new ServerMappedHostTunnelHandler(hostAddr.getHost(), hostAddr.getPort(), connectionPromise, randomGenerator, delayInMillis, useRandomPackets));
+            
+            startTunnel(ctx, in);
+            return;
         }
         
         if (state == State.FIRST_STEP) {
@@ -215,13 +208,19 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
                 return;
             }
             
-            ListenableFuture<ByteBuf> future = handshakeService.createServerToClient1stPacket(in, ctx, new Function<Integer, Void>() {
-                @Override
-                public Void apply(Integer r) {
-                    skipBytes = r;
-                    return null;
-                }
-            });
+            ListenableFuture<ByteBuf> future;
+            try {
+                future = handshakeService.createServerToClient1stPacket(in, ctx, new Function<Integer, Void>() {
+                    @Override
+                    public Void apply(Integer r) {
+                        skipBytes = r;
+                        return null;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected(ctx, in, e);
+                return;
+            }
             Futures.addCallback(future, new FutureCallback<ByteBuf>() {
                 @Override
                 public void onSuccess(ByteBuf packet) {
@@ -230,6 +229,8 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
                 }
                 @Override
                 public void onFailure(Throwable t) {
+                    log.error("Handshake failed, channel: " + ctx.channel(), t);
+                    handshakeService.close(ctx);
                 }
             }, MoreExecutors.directExecutor());
         } else if (state == State.SECOND_STEP) {
@@ -237,13 +238,22 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
                 return;
             }
             
-            ListenableFuture<ByteBuf> future = handshakeService.createServerToClient2ndPacket(in, ctx, new Function<Integer, Void>() {
-                @Override
-                public Void apply(Integer r) {
-                    skipBytes = r;
-                    return null;
-                }
-            });
+            ListenableFuture<ByteBuf> future;
+            try {
+                future = handshakeService.createServerToClient2ndPacket(in, ctx, new Function<Integer, Void>() {
+                    @Override
+                    public Void apply(Integer r) {
+                        skipBytes = r;
+                        return null;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected(ctx, in, e);
+                return;
+            }
+            if (future == null) {
+                return;
+            }
             Futures.addCallback(future, new FutureCallback<ByteBuf>() {
                 @Override
                 public void onSuccess(ByteBuf packet) {
@@ -251,9 +261,52 @@ public class ServerFirstPacketDecoder extends ByteToMessageDecoder {
                 }
                 @Override
                 public void onFailure(Throwable t) {
+                    log.error("Handshake failed, channel: " + ctx.channel(), t);
+                    handshakeService.close(ctx);
                 }
             }, MoreExecutors.directExecutor());
         }
     }
 
+    private void startTunnel(ChannelHandlerContext ctx, ByteBuf in) {
+        final SessionData sessionData = this.sessionData;
+        sessionData.updateLastAccessTime();
+        sessionData.incUsage();
+        ctx.channel().attr(NoiseScheduler.SESSION).set(sessionData);
+
+        ctx.channel().closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+            sessionData.updateLastAccessTime();
+            sessionData.decUsage();
+            }
+        });
+
+        CipherServerEncoderHandler encoderHandler = new CipherServerEncoderHandler(randomGenerator, newSessionId, cryptoService);
+        CipherDecoderHandler decoderHandler = new CipherDecoderHandler(cryptoService);
+        
+        if (useSSL) {
+            ctx.pipeline().addAfter("sslHandler", "encoder", encoderHandler);
+            ctx.pipeline().addAfter("sslHandler", "decoder", decoderHandler);
+        } else {
+            ctx.pipeline().addFirst("encoder", encoderHandler);
+            ctx.pipeline().addFirst("decoder", decoderHandler);
+        }
+        
+        in.retain();
+        
+        if (useSSL) {
+            ctx.pipeline().firstContext().fireChannelRead(in);
+        } else {
+            ctx.pipeline().fireChannelRead(in);
+        }
+    }
+
+    private void rejected(ChannelHandlerContext ctx, ByteBuf in, RejectedExecutionException e) {
+        log.warn("Handshake rejected, channel: {}, {}", ctx.channel(), e.getMessage());
+        in.skipBytes(in.readableBytes());
+        skipBytes = Integer.MAX_VALUE;
+        handshakeService.close(ctx);
+    }
+
 }
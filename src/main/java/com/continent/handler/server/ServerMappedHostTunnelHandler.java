@@ -17,10 +17,12 @@ package com.continent.handler.server;
 
 import com.continent.handler.BackendHandler;
 import com.continent.handler.RandomPacketHandler;
+import com.continent.handler.RelayMetrics;
 import com.continent.random.RandomDelegator;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Promise;
 
 public class ServerMappedHostTunnelHandler extends ChannelInboundHandlerAdapter {
@@ -35,6 +37,7 @@ public class ServerMappedHostTunnelHandler extends ChannelInboundHandlerAdapter
     private final Promise<Channel> promise;
     private final RandomDelegator randomGenerator;
     private final boolean useRandomPackets;
+    private boolean written;
 
     public ServerMappedHostTunnelHandler(String remoteHost, int remotePort, Promise<Channel> promise, RandomDelegator randomGenerator, int delayInMillis, boolean useRandomPackets) {
         this.remoteHost = remoteHost;
@@ -83,19 +86,35 @@ public class ServerMappedHostTunnelHandler extends ChannelInboundHandlerAdapter
     @Override
     public void channelRead(final ChannelHandlerContext ctx, Object msg) {
         if (outboundChannel.isActive()) {
-            outboundChannel.writeAndFlush(msg).addListener(new ChannelFutureListener() {
-                @Override
-                public void operationComplete(ChannelFuture future) {
-                    if (future.isSuccess()) {
-                        // was able to flush out data, start to read the next chunk
-//                        outboundChannel.read();
-                        ctx.channel().read();
-                    } else {
-                        future.channel().close();
-                    }
-                }
-            });
+            RelayMetrics.relayed(msg);
+            written = true;
+            outboundChannel.write(msg).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        } else {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (written) {
+            written = false;
+            RelayMetrics.flushed();
+            outboundChannel.flush();
+        }
+        // outbound channel may still be connecting
+        if (!outboundChannel.isActive() || outboundChannel.isWritable()) {
+            ctx.read();
+        } else {
+            BackendHandler.pauseReading(ctx.channel());
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable() && outboundChannel != null) {
+            BackendHandler.resumeReading(outboundChannel);
         }
+        super.channelWritabilityChanged(ctx);
     }
 
     @Override
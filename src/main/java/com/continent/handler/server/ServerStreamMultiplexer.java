@@ -0,0 +1,123 @@
+package com.continent.handler.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import com.continent.handler.RandomPacketHandler;
+import com.continent.handler.mux.MultiplexedStream;
+import com.continent.handler.mux.StreamFrame;
+import com.continent.handler.mux.StreamMultiplexer;
+import com.continent.handler.mux.StreamRelayHandler;
+import com.continent.random.RandomDelegator;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens connection to the requested host for each stream of multiplexed tunnel.
+ */
+public class ServerStreamMultiplexer extends StreamMultiplexer {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerStreamMultiplexer.class);
+    private final Logger serverHostsLog = LoggerFactory.getLogger("server-hosts-log");
+
+    private final RandomDelegator randomGenerator;
+    private final Set<String> whiteListedHosts;
+    private final boolean tcpNodelay;
+    private final byte[] randomTimeouts;
+
+    public ServerStreamMultiplexer(RandomDelegator randomGenerator, Set<String> whiteListedHosts, boolean tcpNodelay, byte[] randomTimeouts) {
+        this.randomGenerator = randomGenerator;
+        this.whiteListedHosts = whiteListedHosts;
+        this.tcpNodelay = tcpNodelay;
+        this.randomTimeouts = randomTimeouts;
+    }
+
+    @Override
+    protected void onOpen(ChannelHandlerContext ctx, final int streamId, ByteBuf target) {
+        final Channel tunnel = ctx.channel();
+        String address = target.toString(StandardCharsets.UTF_8);
+        int index = address.lastIndexOf(':');
+        if (index <= 0 || streams.containsKey(streamId)) {
+            log.error("Incorrect stream {} target: {}, channel: {}", streamId, address, tunnel);
+            tunnel.writeAndFlush(StreamFrame.rst(streamId));
+            return;
+        }
+
+        String host = address.substring(0, index);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(index + 1));
+        } catch (NumberFormatException e) {
+            log.error("Incorrect stream {} target: {}, channel: {}", streamId, address, tunnel);
+            tunnel.writeAndFlush(StreamFrame.rst(streamId));
+            return;
+        }
+
+        if (!whiteListedHosts.isEmpty()) {
+            serverHostsLog.debug("connection: {} host: {}:{}", tunnel.remoteAddress(), host, port);
+            boolean whiteListed = false;
+            for (String whiteListedHost : whiteListedHosts) {
+                if (host.endsWith(whiteListedHost)) {
+                    whiteListed = true;
+                }
+            }
+
+            if (!whiteListed) {
+                serverHostsLog.debug("host: {}:{} not whitelisted, connection: {}", host, port, tunnel.remoteAddress());
+                tunnel.writeAndFlush(StreamFrame.rst(streamId));
+                return;
+            }
+        }
+
+        final MultiplexedStream stream = new MultiplexedStream(streamId, tunnel, this, null, null);
+        streams.put(streamId, stream);
+
+        Bootstrap b = new Bootstrap();
+        b.group(tunnel.eventLoop())
+         .channel(tunnel.getClass())
+         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
+         .option(ChannelOption.AUTO_READ, false)
+         .option(ChannelOption.TCP_NODELAY, tcpNodelay)
+         .handler(new ChannelInitializer<Channel>() {
+             @Override
+             protected void initChannel(Channel ch) throws Exception {
+                 if (randomTimeouts[0] > 0) {
+                     ch.pipeline().addLast(new RandomPacketHandler(randomGenerator, tunnel, randomTimeouts[0]*100, randomTimeouts[1]*100));
+                 }
+                 ch.pipeline().addLast(new StreamRelayHandler(stream));
+             }
+         });
+
+        b.connect(host, port).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    stream.opened(future.channel());
+                    if (!stream.isClosed()) {
+                        tunnel.writeAndFlush(StreamFrame.openAck(streamId));
+                        future.channel().read();
+                    }
+                } else {
+                    stream.reset();
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onOpenAck(MultiplexedStream stream) {
+        stream.reset();
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.continent.random;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Root random generator with child generator per thread.
+ * <p>
+ * Child generator is seeded by output of root generator and reseeded by it
+ * on first use after each reseed of root generator.
+ * Threads access root generator only during these operations.
+ */
+class GeneratorTree {
+
+    private static final int CHILD_SEED_SIZE = 64;
+
+    private static class Child {
+
+        final RandomDelegator generator;
+        long generation;
+
+        Child(RandomDelegator generator, long generation) {
+            this.generator = generator;
+            this.generation = generation;
+        }
+
+    }
+
+    private final RandomDelegator root;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FastThreadLocal<Child> children = new FastThreadLocal<Child>() {
+        @Override
+        protected Child initialValue() {
+            long gen = generation;
+            byte[] seed = fork();
+            try {
+                forks.incrementAndGet();
+                return new Child(new RandomDelegator(new SkeinRandom(seed)), gen);
+            } finally {
+                Arrays.fill(seed, (byte) 0);
+            }
+        }
+    };
+
+    private volatile long generation;
+    private volatile long reseedTime = System.nanoTime();
+
+    private final AtomicLong forks = new AtomicLong();
+    private final AtomicLong contentions = new AtomicLong();
+    private volatile long lastLag;
+    private volatile long maxLag;
+
+    GeneratorTree(RandomDelegator root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns generator of current thread.
+     */
+    RandomDelegator get() {
+        Child child = children.get();
+        long gen = generation;
+        if (child.generation != gen) {
+            byte[] seed = fork();
+            child.generator.addSeedMaterial(seed);
+            Arrays.fill(seed, (byte) 0);
+            child.generation = gen;
+
+            long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reseedTime);
+            lastLag = lag;
+            if (lag > maxLag) {
+                maxLag = lag;
+            }
+        }
+        return child.generator;
+    }
+
+    void addSeedMaterial(byte[] seed) {
+        lock();
+        try {
+            root.addSeedMaterial(seed);
+            reseedTime = System.nanoTime();
+            generation++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] fork() {
+        byte[] seed = new byte[CHILD_SEED_SIZE];
+        lock();
+        try {
+            root.nextBytes(seed);
+        } finally {
+            lock.unlock();
+        }
+        return seed;
+    }
+
+    private void lock() {
+        if (!lock.tryLock()) {
+            contentions.incrementAndGet();
+            lock.lock();
+        }
+    }
+
+    long getForks() {
+        return forks.get();
+    }
+
+    long getContentions() {
+        return contentions.get();
+    }
+
+    long getLastLag() {
+        return lastLag;
+    }
+
+    long getMaxLag() {
+        return maxLag;
+    }
+
+}
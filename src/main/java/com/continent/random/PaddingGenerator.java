@@ -0,0 +1,86 @@
+package com.continent.random;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.bouncycastle.crypto.engines.ChaChaEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * Writes random padding generated by ChaCha keystream.
+ * <p>
+ * Each thread has its own keystream keyed by random generator of the first caller.
+ * Keystream is generated directly into heap buffers and through intermediate buffer into direct ones.
+ * Thread keystream is rekeyed each {@link #REKEY_INTERVAL} bytes.
+ */
+public final class PaddingGenerator {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final long REKEY_INTERVAL = 1L << 30;
+
+    private static final FastThreadLocal<PaddingGenerator> generators = new FastThreadLocal<PaddingGenerator>() {
+        @Override
+        protected PaddingGenerator initialValue() {
+            return new PaddingGenerator();
+        }
+    };
+
+    private final ChaChaEngine engine = new ChaChaEngine(20);
+    private final byte[] zeros = new byte[BUFFER_SIZE];
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = BUFFER_SIZE;
+    private long generated = REKEY_INTERVAL;
+
+    private PaddingGenerator() {
+    }
+
+    public static void write(ByteBuf output, int length, Random seedSource) {
+        if (length > 0) {
+            generators.get().generate(output, length, seedSource);
+        }
+    }
+
+    private void generate(ByteBuf output, int length, Random seedSource) {
+        if (generated >= REKEY_INTERVAL) {
+            rekey(seedSource);
+        }
+        generated += length;
+
+        output.ensureWritable(length);
+        if (output.hasArray()) {
+            while (length > 0) {
+                int n = Math.min(length, BUFFER_SIZE);
+                engine.processBytes(zeros, 0, n, output.array(), output.arrayOffset() + output.writerIndex());
+                output.writerIndex(output.writerIndex() + n);
+                length -= n;
+            }
+            return;
+        }
+
+        while (length > 0) {
+            if (position == BUFFER_SIZE) {
+                engine.processBytes(zeros, 0, BUFFER_SIZE, buffer, 0);
+                position = 0;
+            }
+            int n = Math.min(length, BUFFER_SIZE - position);
+            output.writeBytes(buffer, position, n);
+            position += n;
+            length -= n;
+        }
+    }
+
+    private void rekey(Random seedSource) {
+        byte[] key = new byte[32];
+        byte[] iv = new byte[8];
+        seedSource.nextBytes(key);
+        seedSource.nextBytes(iv);
+        engine.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        Arrays.fill(key, (byte) 0);
+        position = BUFFER_SIZE;
+        generated = 0;
+    }
+
+}
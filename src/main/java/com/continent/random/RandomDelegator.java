@@ -1,9 +1,16 @@
 package com.continent.random;
 
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 import org.bouncycastle.crypto.prng.RandomGenerator;
 
+/**
+ * Random generator adapter.
+ * <p>
+ * In buffered mode output of delegated generator is requested by blocks.
+ * Numbers and small byte arrays are taken from the block and consumed bytes are burned.
+ */
 public class RandomDelegator extends SecureRandom implements RandomGenerator {
     
     private static final long serialVersionUID = 1L;
@@ -11,11 +18,27 @@ public class RandomDelegator extends SecureRandom implements RandomGenerator {
     // to solve NPE during Random class constructor invocation
     private final boolean init;
     private final RandomGenerator randomGenerator;
+    private final byte[] buffer;
+    private int position;
 
     public RandomDelegator(RandomGenerator randomGenerator) {
+        this(randomGenerator, 0);
+    }
+
+    /**
+     * @param randomGenerator - delegated generator
+     * @param bufferSize - size of block requested from generator, <code>0</code> means unbuffered mode
+     */
+    public RandomDelegator(RandomGenerator randomGenerator, int bufferSize) {
         super();
         this.init = true;
         this.randomGenerator = randomGenerator;
+        if (bufferSize > 0) {
+            this.buffer = new byte[bufferSize];
+            this.position = bufferSize;
+        } else {
+            this.buffer = null;
+        }
     }
     
     @Override
@@ -34,7 +57,72 @@ public class RandomDelegator extends SecureRandom implements RandomGenerator {
     
     @Override
     public void nextBytes(byte[] bytes) {
-        randomGenerator.nextBytes(bytes);
+        nextBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public int nextInt() {
+        if (buffer == null) {
+            return super.nextInt();
+        }
+        synchronized (buffer) {
+            ensureAvailable(4);
+            int result = (buffer[position] & 0xFF) << 24
+                        | (buffer[position + 1] & 0xFF) << 16
+                        | (buffer[position + 2] & 0xFF) << 8
+                        | (buffer[position + 3] & 0xFF);
+            burn(4);
+            return result;
+        }
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (buffer == null) {
+            return super.nextInt(bound);
+        }
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+
+        // same algorithm as in Random.nextInt(int)
+        int r = nextInt() >>> 1;
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = nextInt() >>> 1) {
+        }
+        return r;
+    }
+
+    @Override
+    public long nextLong() {
+        if (buffer == null) {
+            return super.nextLong();
+        }
+        return ((long) nextInt() << 32) + nextInt();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        if (buffer == null) {
+            return super.nextBoolean();
+        }
+        return nextInt() < 0;
+    }
+
+    private void ensureAvailable(int len) {
+        if (buffer.length - position < len) {
+            Arrays.fill(buffer, position, buffer.length, (byte) 0);
+            randomGenerator.nextBytes(buffer);
+            position = 0;
+        }
+    }
+
+    private void burn(int len) {
+        Arrays.fill(buffer, position, position + len, (byte) 0);
+        position += len;
     }
 
     @Override
@@ -49,7 +137,15 @@ public class RandomDelegator extends SecureRandom implements RandomGenerator {
 
     @Override
     public void nextBytes(byte[] bytes, int start, int len) {
-        randomGenerator.nextBytes(bytes, start, len);
+        if (buffer == null || len > buffer.length / 4) {
+            randomGenerator.nextBytes(bytes, start, len);
+            return;
+        }
+        synchronized (buffer) {
+            ensureAvailable(len);
+            System.arraycopy(buffer, position, bytes, start, len);
+            burn(len);
+        }
     }
 
 }
@@ -19,10 +19,12 @@ public class RandomService {
 
     private static final Logger log = LoggerFactory.getLogger(RandomService.class);
 
+    private static final int DATA_GENERATOR_BUFFER_SIZE = 4096;
+
     private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
 
-    private final RandomDelegator keyGenerator;
-    private final RandomDelegator nonceGenerator;
+    private final GeneratorTree keyGenerators;
+    private final GeneratorTree nonceGenerators;
 
     private final EntropySource keySeedSource;
     private final EntropySource nonceSeedSource;
@@ -35,8 +37,8 @@ public class RandomService {
         this.keySeedSource = keySeedSource;
         this.nonceSeedSource = nonceSeedSource;
 
-        nonceGenerator = createGenerator(nonceSeedSource, 128);
-        keyGenerator = createGenerator(keySeedSource, 256);
+        nonceGenerators = new GeneratorTree(createGenerator(nonceSeedSource, 128));
+        keyGenerators = new GeneratorTree(createGenerator(keySeedSource, 256));
 
         if (nonceSeedInterval == 0) {
             nonceSeedInterval = 60;
@@ -50,7 +52,7 @@ public class RandomService {
         executor.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
-            addSeed(nonceGenerator, nonceSeedSource, nonceSeedBuffer);
+            addSeed(nonceGenerators, nonceSeedSource, nonceSeedBuffer);
             }
         }, nonceSeedInterval, nonceSeedInterval, TimeUnit.SECONDS);
 
@@ -58,7 +60,7 @@ public class RandomService {
         executor.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
-            addSeed(keyGenerator, keySeedSource, keySeedBuffer);
+            addSeed(keyGenerators, keySeedSource, keySeedBuffer);
             }
         }, keySeedInterval, keySeedInterval, TimeUnit.SECONDS);
     }
@@ -77,12 +79,43 @@ public class RandomService {
         }
     }
 
+    /**
+     * Returns key generator of current thread.
+     */
     public RandomDelegator getKeyGenerator() {
-        return keyGenerator;
+        return keyGenerators.get();
     }
     
+    /**
+     * Returns nonce generator of current thread.
+     */
     public RandomDelegator getNonceGenerator() {
-        return nonceGenerator;
+        return nonceGenerators.get();
+    }
+
+    /**
+     * Returns amount of thread generators forked from root generators.
+     */
+    public long getForks() {
+        return keyGenerators.getForks() + nonceGenerators.getForks();
+    }
+
+    /**
+     * Returns amount of contended accesses to root generators.
+     */
+    public long getContentions() {
+        return keyGenerators.getContentions() + nonceGenerators.getContentions();
+    }
+
+    /**
+     * Returns time between last reseed of root generator and reseed of thread generator.
+     */
+    public long getReseedLag() {
+        return Math.max(keyGenerators.getLastLag(), nonceGenerators.getLastLag());
+    }
+
+    public long getMaxReseedLag() {
+        return Math.max(keyGenerators.getMaxLag(), nonceGenerators.getMaxLag());
     }
 
     public RandomDelegator createRandomDataGenerator() {
@@ -94,7 +127,7 @@ public class RandomService {
 
         RandomGenerator randomGenerator = new SkeinRandom(startSeed, null, SkeinDigest.SKEIN_256, 16);
         burn(startSeed);
-        return new RandomDelegator(randomGenerator);
+        return new RandomDelegator(randomGenerator, DATA_GENERATOR_BUFFER_SIZE);
     }
 
     private String prettyDump(byte[] seedBytes) {
@@ -121,7 +154,7 @@ public class RandomService {
         return new RandomDelegator(randomGenerator);
     }
     
-    private void addSeed(RandomDelegator random, EntropySource seedSource, ByteBuffer newSeedBuffer) {
+    private void addSeed(GeneratorTree random, EntropySource seedSource, ByteBuffer newSeedBuffer) {
         newSeedBuffer.clear();
         seedSource.fill(newSeedBuffer);
 
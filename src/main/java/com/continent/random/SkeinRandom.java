@@ -4,15 +4,11 @@ import com.continent.engine.skein.SkeinDigest;
 import org.bouncycastle.crypto.params.SkeinParameters;
 import org.bouncycastle.crypto.prng.RandomGenerator;
 
-import java.util.Arrays;
-
 public class SkeinRandom implements RandomGenerator {
 
-    private final int stateSizeBits;
     private final byte[] state;
-    private final SkeinParameters parameters;
     private final SkeinDigest stateDigest;
-    private int rounds;
+    private final SkeinDigest outputDigest;
 
     public SkeinRandom(byte[] seed) {
         this(seed, null, SkeinDigest.SKEIN_512, 72);
@@ -24,12 +20,11 @@ public class SkeinRandom implements RandomGenerator {
 
     public SkeinRandom(byte[] seed, SkeinParameters parameters, int stateSizeBits, int rounds) {
         super();
-        this.stateSizeBits = stateSizeBits;
-        this.parameters = parameters;
         this.state = new byte[stateSizeBits / 8];
         stateDigest = new SkeinDigest(stateSizeBits, stateSizeBits, rounds);
         stateDigest.init(parameters);
-        this.rounds = rounds;
+        outputDigest = new SkeinDigest(stateSizeBits, stateSizeBits, rounds);
+        outputDigest.init(parameters);
 
         if (seed != null) {
             addSeedMaterial(seed);
@@ -63,14 +58,10 @@ public class SkeinRandom implements RandomGenerator {
 
     @Override
     public synchronized void nextBytes(byte[] bytes, int start, int len) {
-        SkeinDigest digest = new SkeinDigest(stateSizeBits, (state.length + len)*8, rounds);
-        digest.init(parameters);
-        digest.update(state, 0, state.length);
-        byte[] out = new byte[digest.getDigestSize()];
-        digest.doFinal(out, 0);
-        System.arraycopy(out, 0, state, 0, state.length);
-        System.arraycopy(out, state.length, bytes, start, len);
-        Arrays.fill(out, (byte)0);
+        // output size is a part of Skein configuration, so digest is reconfigured for each length
+        outputDigest.setDigestSize((state.length + len)*8);
+        outputDigest.update(state, 0, state.length);
+        outputDigest.doFinal(state, bytes, start);
     }
 
 }
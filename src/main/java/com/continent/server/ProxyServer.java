@@ -15,15 +15,23 @@
  */
 package com.continent.server;
 
+import com.continent.handler.NoiseScheduler;
+import com.continent.handler.RelayMetrics;
 import com.continent.random.RandomService;
-import com.continent.service.SessionData;
-import com.continent.service.SessionId;
+import com.continent.service.ClientIdentifier;
+import com.continent.service.HandshakeExecutor;
+import com.continent.service.KeyPairPool;
+import com.continent.service.ReplayCache;
+import com.continent.service.SessionExpiry;
+import com.continent.service.SessionIndex;
+import com.continent.service.SslContexts;
+import com.continent.service.Transport;
 import com.google.common.io.BaseEncoding;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.ssl.SslContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
@@ -35,17 +43,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public final class ProxyServer {
 
     static final Logger log = LoggerFactory.getLogger(ProxyServer.class);
 
+    private static final int REPLAY_WINDOW_EPOCHS = 24;
+    private static final long SESSION_EXPIRY_TICK = TimeUnit.SECONDS.toMillis(10);
+
     
     public void init(String configFile) throws IOException, InterruptedException {
         Path settingsPath = Paths.get("").toAbsolutePath().resolve(configFile);
@@ -71,45 +79,130 @@ public final class ProxyServer {
         if (config.getSessionTimeout() == 0) {
             config.setSessionTimeout(TimeUnit.HOURS.toSeconds(3));
         }
+        if (config.getHandshakeThreads() == 0) {
+            config.setHandshakeThreads(Runtime.getRuntime().availableProcessors());
+        }
+        if (config.getHandshakeQueueSize() == 0) {
+            config.setHandshakeQueueSize(1024);
+        }
+        if (config.getHandshakeClientQueueSize() == 0) {
+            config.setHandshakeClientQueueSize(16);
+        }
+        if (config.getKeyPairPoolSize() == 0) {
+            config.setKeyPairPoolSize(64);
+        }
+        if (config.getReplayWindow() == 0) {
+            config.setReplayWindow(TimeUnit.DAYS.toSeconds(1));
+        }
+        if (config.getReplayCacheSize() == 0) {
+            config.setReplayCacheSize(1000000);
+        }
+        if (config.getAcceptors() == 0) {
+            config.setAcceptors(Transport.EPOLL ? Runtime.getRuntime().availableProcessors() : 1);
+        }
         
-        RandomService randomService = new RandomService(config.getNonceSeedInterval(), config.getKeySeedInterval());
+        final RandomService randomService = new RandomService(config.getNonceSeedInterval(), config.getKeySeedInterval());
 
-        ExecutorService executor = Executors.newFixedThreadPool(1);
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        final HandshakeExecutor executor = new HandshakeExecutor(config.getHandshakeThreads(),
+                                            config.getHandshakeQueueSize(), config.getHandshakeClientQueueSize());
+        final ClientIdentifier clientIdentifier = new ClientIdentifier(id2PubKey, config.getHandshakeThreads());
+        final ReplayCache replayCache = new ReplayCache(REPLAY_WINDOW_EPOCHS, config.getReplayCacheSize(), 0.000001);
+        final KeyPairPool keyPairPool = new KeyPairPool(randomService, config.getKeyPairPoolSize(), config.getHandshakeThreads());
+        final NoiseScheduler noiseScheduler = new NoiseScheduler(config.getNoiseBandwidth(), config.getNoiseSessionBandwidth());
+        SslContext sslContext = SslContexts.forServer(config.getCertificateFile(), config.getPrivateKeyFile(), randomService.getKeyGenerator());
+        EventLoopGroup bossGroup = Transport.newEventLoopGroup(config.getAcceptors());
+        EventLoopGroup workerGroup = Transport.newEventLoopGroup(0);
         
-        final Map<SessionId, SessionData> sessions = new ConcurrentHashMap<SessionId, SessionData>();
+        final SessionIndex sessions = new SessionIndex();
+        final SessionExpiry sessionExpiry = new SessionExpiry(sessions, TimeUnit.SECONDS.toMillis(config.getSessionTimeout()), SESSION_EXPIRY_TICK);
         workerGroup.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
-                boolean removed = false;
-                for (Iterator<SessionData> iterator = sessions.values().iterator(); iterator.hasNext();) {
-                    SessionData sessionData = iterator.next();
-                    if (System.currentTimeMillis() - sessionData.getLastAccessTime() > TimeUnit.SECONDS.toMillis(config.getSessionTimeout())
-                            && sessionData.getUsage() == 0) {
-                        iterator.remove();
-                        sessionData.clear();
-                        removed = true;
-                    }
+                if (sessionExpiry.expire(System.currentTimeMillis()) > 0) {
+                    log.info("Sessions remain: {}, expired: {}, expiration lag: {} ms, max lag: {} ms",
+                            sessionExpiry.getSize(), sessionExpiry.getExpired(), sessionExpiry.getLastLag(), sessionExpiry.getMaxLag());
                 }
-                if (removed) {
-                    log.info("Sessions remain: {}", sessions.size());
+            }
+        }, SESSION_EXPIRY_TICK, SESSION_EXPIRY_TICK, TimeUnit.MILLISECONDS);
+
+        workerGroup.scheduleWithFixedDelay(new Runnable() {
+
+            // counters logged at info level only when they have changed since previous run
+            private long rejectedTasks;
+            private long replays;
+            private long misses;
+            private long suppressed;
+
+            @Override
+            public void run() {
+                long rejectedTasks = executor.getRejectedTasks();
+                long replays = replayCache.getReplays();
+                long misses = keyPairPool.getMisses();
+                long suppressed = noiseScheduler.getSuppressed();
+
+                if (rejectedTasks != this.rejectedTasks || log.isDebugEnabled()) {
+                    log.info("Handshakes executed: {}, rejected: {}, queued: {}, avg wait: {} ms, max wait: {} ms",
+                            executor.getExecutedTasks(), rejectedTasks, executor.getQueueSize(),
+                            executor.getAverageWaitTime(TimeUnit.MILLISECONDS), executor.getMaxWaitTime(TimeUnit.MILLISECONDS));
+                }
+                if (replays != this.replays || log.isDebugEnabled()) {
+                    log.info("Replay cache tags: {}, rejected: {}, false positive probability: {}",
+                            replayCache.getSize(), replays, replayCache.getFalsePositiveProbability());
+                }
+                if (misses != this.misses || log.isDebugEnabled()) {
+                    log.info("Key pair pool hits: {}, misses: {}, available: {}",
+                            keyPairPool.getHits(), misses, keyPairPool.getSize());
                 }
+                log.debug("Relayed bytes: {}, messages: {}, flushes: {}, read pauses: {}",
+                        RelayMetrics.getBytes(), RelayMetrics.getMessages(), RelayMetrics.getFlushes(), RelayMetrics.getPauses());
+                if (suppressed != this.suppressed || log.isDebugEnabled()) {
+                    log.info("Random packets sent: {}, bytes: {}, suppressed: {}, overhead: {}%",
+                            noiseScheduler.getPackets(), noiseScheduler.getBytes(), suppressed,
+                            String.format("%.2f", noiseScheduler.getOverhead() * 100));
+                }
+                log.debug("Random generators forked: {}, contentions: {}, reseed lag: {} ms, max reseed lag: {} ms",
+                        randomService.getForks(), randomService.getContentions(),
+                        randomService.getReseedLag(), randomService.getMaxReseedLag());
+
+                this.rejectedTasks = rejectedTasks;
+                this.replays = replays;
+                this.misses = misses;
+                this.suppressed = suppressed;
             }
         }, 1, 1, TimeUnit.MINUTES);
+
+        long epochDuration = TimeUnit.SECONDS.toMillis(config.getReplayWindow()) / REPLAY_WINDOW_EPOCHS;
+        workerGroup.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                replayCache.rotate();
+            }
+        }, epochDuration, epochDuration, TimeUnit.MILLISECONDS);
         
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
              .childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
              .childOption(ChannelOption.SO_KEEPALIVE, true)
-             .channel(NioServerSocketChannel.class)
+             .channel(Transport.serverChannelClass())
 //             .handler(new LoggingHandler(LogLevel.TRACE))
-             .childHandler(new ProxyServerInitializer(randomService, sessions, config.getWhiteListedHosts(), executor, id2PubKey, 
+             .childHandler(new ProxyServerInitializer(randomService, sessions, sessionExpiry, sslContext, noiseScheduler, config.getWhiteListedHosts(), executor, keyPairPool, clientIdentifier, replayCache, 
                                  config.isTcpNoDelay(), config.getMaxWriteDelayMs(), config.isUseRandomPackets()));
-            b.bind(config.getPort()).sync().channel().closeFuture().sync();
+            config.getSocketOptions().applyToChildren(b);
+
+            List<ChannelFuture> futures = Transport.bind(b, config.getPort(), config.getAcceptors());
+            for (ChannelFuture future : futures) {
+                future.sync();
+            }
+            log.info("Listening on port {}, acceptors: {}", config.getPort(), futures.size());
+            for (ChannelFuture future : futures) {
+                future.channel().closeFuture().sync();
+            }
         } finally {
             executor.shutdown();
+            keyPairPool.shutdown();
+            clientIdentifier.shutdown();
+            noiseScheduler.shutdown();
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
         }
@@ -15,36 +15,52 @@
  */
 package com.continent.server;
 
+import com.continent.handler.NoiseScheduler;
 import com.continent.handler.server.PortUnificationServerHandler;
 import com.continent.random.RandomService;
+import com.continent.service.ClientIdentifier;
+import com.continent.service.HandshakeExecutor;
 import com.continent.service.HandshakeService;
-import com.continent.service.SessionData;
-import com.continent.service.SessionId;
+import com.continent.service.KeyPairPool;
+import com.continent.service.ReplayCache;
+import com.continent.service.SessionExpiry;
+import com.continent.service.SessionIndex;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslContext;
 
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 
 public final class ProxyServerInitializer extends ChannelInitializer<SocketChannel> {
     
     private final RandomService randomService;
-    private final Map<SessionId, SessionData> sessions;
+    private final SessionIndex sessions;
     private final Set<String> whiteListedHosts;
-    private final ExecutorService executorService;
-    private final Map<byte[], byte[]> id2PubKey;
+    private final HandshakeExecutor handshakeExecutor;
+    private final KeyPairPool keyPairPool;
+    private final ClientIdentifier clientIdentifier;
+    private final ReplayCache replayCache;
+    private final SessionExpiry sessionExpiry;
+    private final SslContext sslContext;
+    private final NoiseScheduler noiseScheduler;
     private final boolean tcpNodelay;
     private final int delayInMillis;
     private final boolean useRandomPackets;
     
-    public ProxyServerInitializer(RandomService randomService, Map<SessionId, SessionData> sessions, Set<String> whiteListedHosts,
-            ExecutorService executorService, Map<byte[], byte[]> id2PubKey, boolean tcpNodelay, int delayInMillis, boolean useRandomPackets) {
+    public ProxyServerInitializer(RandomService randomService, SessionIndex sessions, SessionExpiry sessionExpiry, SslContext sslContext, NoiseScheduler noiseScheduler, Set<String> whiteListedHosts,
+            HandshakeExecutor handshakeExecutor, KeyPairPool keyPairPool, ClientIdentifier clientIdentifier, ReplayCache replayCache,
+            boolean tcpNodelay, int delayInMillis, boolean useRandomPackets) {
         this.randomService = randomService;
         this.sessions = sessions;
+        this.sessionExpiry = sessionExpiry;
+        this.sslContext = sslContext;
+        this.noiseScheduler = noiseScheduler;
         this.whiteListedHosts = whiteListedHosts;
-        this.executorService = executorService;
-        this.id2PubKey = id2PubKey;
+        this.handshakeExecutor = handshakeExecutor;
+        this.keyPairPool = keyPairPool;
+        this.clientIdentifier = clientIdentifier;
+        this.replayCache = replayCache;
         this.tcpNodelay = tcpNodelay;
         this.delayInMillis = delayInMillis;
         this.useRandomPackets = useRandomPackets;
@@ -52,7 +68,10 @@ public final class ProxyServerInitializer extends ChannelInitializer<SocketChann
 
     @Override
     public void initChannel(SocketChannel ch) throws Exception {
-        HandshakeService handshakeService = new HandshakeService(executorService, randomService, sessions, id2PubKey);
-        ch.pipeline().addLast(new PortUnificationServerHandler(handshakeService, randomService, delayInMillis, whiteListedHosts, tcpNodelay, useRandomPackets));
+        ch.attr(NoiseScheduler.SCHEDULER).set(noiseScheduler);
+        // handshakes are queued per client address
+        Executor executor = handshakeExecutor.forClient(ch.remoteAddress().getAddress());
+        HandshakeService handshakeService = new HandshakeService(executor, keyPairPool, randomService, sessions, sessionExpiry, clientIdentifier, replayCache);
+        ch.pipeline().addLast(new PortUnificationServerHandler(handshakeService, sslContext, randomService, delayInMillis, whiteListedHosts, tcpNodelay, useRandomPackets));
     }
 }
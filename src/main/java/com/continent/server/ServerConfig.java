@@ -4,6 +4,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
 
+import com.continent.service.SocketOptions;
+
 public class ServerConfig {
 
     int port;
@@ -15,6 +17,18 @@ public class ServerConfig {
     int nonceSeedInterval;
     int keySeedInterval;
     long sessionTimeout;
+    int handshakeThreads;
+    int handshakeQueueSize;
+    int handshakeClientQueueSize;
+    int keyPairPoolSize;
+    long replayWindow;
+    int replayCacheSize;
+    String certificateFile;
+    String privateKeyFile;
+    int acceptors;
+    SocketOptions socketOptions = new SocketOptions();
+    long noiseBandwidth;
+    long noiseSessionBandwidth;
 
     public long getSessionTimeout() {
         return sessionTimeout;
@@ -23,6 +37,90 @@ public class ServerConfig {
         this.sessionTimeout = sessionTimeout;
     }
 
+    public int getHandshakeThreads() {
+        return handshakeThreads;
+    }
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
+    public int getHandshakeQueueSize() {
+        return handshakeQueueSize;
+    }
+    public void setHandshakeQueueSize(int handshakeQueueSize) {
+        this.handshakeQueueSize = handshakeQueueSize;
+    }
+
+    public int getHandshakeClientQueueSize() {
+        return handshakeClientQueueSize;
+    }
+    public void setHandshakeClientQueueSize(int handshakeClientQueueSize) {
+        this.handshakeClientQueueSize = handshakeClientQueueSize;
+    }
+
+    public int getKeyPairPoolSize() {
+        return keyPairPoolSize;
+    }
+    public void setKeyPairPoolSize(int keyPairPoolSize) {
+        this.keyPairPoolSize = keyPairPoolSize;
+    }
+
+    public long getReplayWindow() {
+        return replayWindow;
+    }
+    public void setReplayWindow(long replayWindow) {
+        this.replayWindow = replayWindow;
+    }
+
+    public int getReplayCacheSize() {
+        return replayCacheSize;
+    }
+    public void setReplayCacheSize(int replayCacheSize) {
+        this.replayCacheSize = replayCacheSize;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public long getNoiseBandwidth() {
+        return noiseBandwidth;
+    }
+    public void setNoiseBandwidth(long noiseBandwidth) {
+        this.noiseBandwidth = noiseBandwidth;
+    }
+
+    public long getNoiseSessionBandwidth() {
+        return noiseSessionBandwidth;
+    }
+    public void setNoiseSessionBandwidth(long noiseSessionBandwidth) {
+        this.noiseSessionBandwidth = noiseSessionBandwidth;
+    }
+
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+    public void setSocketOptions(SocketOptions socketOptions) {
+        this.socketOptions = socketOptions;
+    }
+
+    public String getCertificateFile() {
+        return certificateFile;
+    }
+    public void setCertificateFile(String certificateFile) {
+        this.certificateFile = certificateFile;
+    }
+
+    public String getPrivateKeyFile() {
+        return privateKeyFile;
+    }
+    public void setPrivateKeyFile(String privateKeyFile) {
+        this.privateKeyFile = privateKeyFile;
+    }
+
     public int getNonceSeedInterval() {
         return nonceSeedInterval;
     }
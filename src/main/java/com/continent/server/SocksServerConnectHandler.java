@@ -21,7 +21,6 @@ import com.continent.handler.server.ConnectionHandler;
 import com.continent.random.RandomDelegator;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.socksx.SocksMessage;
 import io.netty.handler.codec.socksx.v5.DefaultSocks5CommandResponse;
 import io.netty.handler.codec.socksx.v5.Socks5CommandRequest;
@@ -103,7 +102,7 @@ public final class SocksServerConnectHandler extends SimpleChannelInboundHandler
 
             final Channel inboundChannel = ctx.channel();
             b.group(inboundChannel.eventLoop())
-                    .channel(NioSocketChannel.class)
+                    .channel(inboundChannel.getClass())
                     .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
                     .option(ChannelOption.AUTO_READ, false)
                     .option(ChannelOption.TCP_NODELAY, tcpNodelay)
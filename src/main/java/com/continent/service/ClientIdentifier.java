@@ -0,0 +1,159 @@
+package com.continent.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bouncycastle.crypto.digests.SkeinEngine;
+import org.bouncycastle.crypto.params.SkeinParameters;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Finds client id used as a key of handshake packet tag.
+ * <p>
+ * Skein MAC state after key processing is cached for each id, so only packet data is processed per id.
+ * Large amount of ids is checked in batches by several threads.
+ */
+public class ClientIdentifier {
+
+    public static class Match {
+
+        private final byte[] id;
+        private final byte[] pubKey;
+        private final byte[] tag;
+
+        Match(byte[] id, byte[] pubKey, byte[] tag) {
+            this.id = id;
+            this.pubKey = pubKey;
+            this.tag = tag;
+        }
+
+        public byte[] getId() {
+            return id;
+        }
+
+        public byte[] getPubKey() {
+            return pubKey;
+        }
+
+        public byte[] getTag() {
+            return tag;
+        }
+
+    }
+
+    static final int BATCH_SIZE = 256;
+
+    private final byte[][] ids;
+    private final byte[][] pubKeys;
+    private final SkeinEngine[] keyedEngines;
+    private final ExecutorService executor;
+
+    public ClientIdentifier(Map<byte[], byte[]> id2PubKey, int threads) {
+        ids = new byte[id2PubKey.size()][];
+        pubKeys = new byte[id2PubKey.size()][];
+        keyedEngines = new SkeinEngine[id2PubKey.size()];
+        int i = 0;
+        for (Entry<byte[], byte[]> entry : id2PubKey.entrySet()) {
+            ids[i] = entry.getKey();
+            pubKeys[i] = entry.getValue();
+            keyedEngines[i] = new SkeinEngine(SkeinEngine.SKEIN_256, 256);
+            keyedEngines[i].init(new SkeinParameters.Builder().setKey(entry.getKey()).build());
+            i++;
+        }
+
+        if (threads > 1 && ids.length > BATCH_SIZE) {
+            executor = Executors.newFixedThreadPool(threads, new DefaultThreadFactory("client-identifier", true));
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Calculates tag of <code>data</code> with each id.
+     *
+     * @return matched id or <code>null</code> if none of ids produces <code>truncatedTag</code>
+     */
+    public Match identify(final byte[] data, final byte[] truncatedTag) {
+        if (executor == null) {
+            return check(data, truncatedTag, 0, ids.length, null);
+        }
+
+        final AtomicReference<Match> result = new AtomicReference<>();
+        List<Future<Match>> futures = new ArrayList<>();
+        for (int i = BATCH_SIZE; i < ids.length; i += BATCH_SIZE) {
+            final int from = i;
+            final int to = Math.min(i + BATCH_SIZE, ids.length);
+            futures.add(executor.submit(new Callable<Match>() {
+                @Override
+                public Match call() throws Exception {
+                    return check(data, truncatedTag, from, to, result);
+                }
+            }));
+        }
+
+        // first batch is checked by caller thread
+        check(data, truncatedTag, 0, BATCH_SIZE, result);
+        try {
+            for (Future<Match> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return result.get();
+    }
+
+    private Match check(byte[] data, byte[] truncatedTag, int from, int to, AtomicReference<Match> result) {
+        SkeinEngine engine = new SkeinEngine(SkeinEngine.SKEIN_256, 256);
+        for (int i = from; i < to; i++) {
+            if (result != null && result.get() != null) {
+                return null;
+            }
+
+            engine.reset(keyedEngines[i]);
+            engine.update(data, 0, data.length);
+            byte[] tag = new byte[engine.getOutputSize()];
+            engine.doFinal(tag, 0);
+
+            if (startsWith(tag, truncatedTag)) {
+                Match match = new Match(ids[i], pubKeys[i], tag);
+                if (result != null) {
+                    result.compareAndSet(null, match);
+                }
+                return match;
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] tag, byte[] truncatedTag) {
+        int diff = 0;
+        for (int i = 0; i < truncatedTag.length; i++) {
+            diff |= tag[i] ^ truncatedTag[i];
+        }
+        return diff == 0;
+    }
+
+    public int getSize() {
+        return ids.length;
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+}
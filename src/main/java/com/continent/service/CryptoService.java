@@ -5,6 +5,8 @@ import com.continent.engine.rc6.RC6_256_1024Engine;
 import com.continent.engine.rc6.RC6_256_2048Engine;
 import com.continent.engine.rc6.RC6_256_256Engine;
 import com.continent.engine.rc6.RC6_256_512Engine;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.EventExecutor;
 import net.sf.ntru.encrypt.EncryptionKeyPair;
 import net.sf.ntru.encrypt.EncryptionParameters;
 import net.sf.ntru.encrypt.EncryptionPublicKey;
@@ -15,7 +17,6 @@ import org.bouncycastle.crypto.engines.CAST6Engine;
 import org.bouncycastle.crypto.engines.HC256Engine;
 import org.bouncycastle.crypto.engines.SerpentEngine;
 import org.bouncycastle.crypto.io.CipherOutputStream;
-import org.bouncycastle.crypto.modes.CFBBlockCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 
@@ -28,23 +29,25 @@ public class CryptoService {
 
     class DecryptedInputStream extends FilterInputStream {
 
-        private final CipherOutputStream cos;
-        private final ByteArrayOutputStream os;
+        private final StreamCipher decryptCipher;
+        // large chunks allow block ciphers to decrypt them in parallel
+        private byte[] buffer;
+        private int position;
+        private int limit;
 
         public DecryptedInputStream(InputStream in, StreamCipher decryptCipher) {
             super(in);
 
             this.in = in;
-            this.os = new ByteArrayOutputStream();
-            this.cos = new CipherOutputStream(os, decryptCipher);
+            this.decryptCipher = decryptCipher;
         }
 
         @Override
         public int read() throws IOException {
-            cos.write(in.read());
-            byte[] bb = os.toByteArray();
-            os.reset();
-            return new ByteArrayInputStream(bb).read();
+            if (!fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
         }
 
         @Override
@@ -54,17 +57,51 @@ public class CryptoService {
 
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
-            int size = in.read(b, off, len);
-            cos.write(b, off, size);
-            byte[] decryptedBytes = os.toByteArray();
-            os.reset();
-            System.arraycopy(decryptedBytes, 0, b, off, decryptedBytes.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int size = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, size);
+            position += size;
             return size;
         }
 
+        @Override
+        public int available() throws IOException {
+            return limit - position;
+        }
+
+        private boolean fill() throws IOException {
+            if (position < limit) {
+                return true;
+            }
+            if (buffer == null) {
+                buffer = new byte[Math.max(SCRATCH_SIZE, Math.min(DECRYPT_BUFFER_SIZE, in.available()))];
+            }
+
+            int size = 0;
+            while (size < buffer.length) {
+                int readBytes = in.read(buffer, size, buffer.length - size);
+                if (readBytes == -1) {
+                    break;
+                }
+                size += readBytes;
+            }
+
+            decryptCipher.processBytes(buffer, 0, size, buffer, 0);
+            position = 0;
+            limit = size;
+            return size > 0;
+        }
+
         @Override
         public void close() throws IOException {
-            cos.close();
+            if (buffer != null) {
+                burn(buffer);
+            }
         }
     }
 
@@ -135,8 +172,12 @@ public class CryptoService {
     public static final int ntruDecryptedChunkSize = 247;
     public static final int ntruEncryptedChunkSize = 2062;
 
+    private static final int SCRATCH_SIZE = 8192;
+    private static final int DECRYPT_BUFFER_SIZE = 1024*1024;
+
     private StreamCipher encryptCipher;
     private StreamCipher decryptCipher;
+    private byte[] scratch;
 
     private static List<byte[]> splitToNTRUChunks(byte[] data) {
         int chunksAmount = (int)Math.ceil(data.length / (double)ntruDecryptedChunkSize);
@@ -218,7 +259,7 @@ public class CryptoService {
 
             if (cipher instanceof BlockCipher) {
                 BlockCipher bc = (BlockCipher) cipher;
-                StreamCipher decryptCipher = new CFBBlockCipher(bc, bc.getBlockSize()*8);
+                StreamCipher decryptCipher = new CFBStreamCipher(bc);
                 decryptCipher.init(false, clientParams);
                 decryptCiphers.add(decryptCipher);
             }
@@ -263,7 +304,7 @@ public class CryptoService {
 
             if (cipher instanceof BlockCipher) {
                 BlockCipher bc = (BlockCipher) cipher;
-                StreamCipher encryptCipher = new CFBBlockCipher(bc, bc.getBlockSize()*8);
+                StreamCipher encryptCipher = new CFBStreamCipher(bc);
                 encryptCipher.init(true, serverParams);
                 encryptCiphers.add(encryptCipher);
             }
@@ -277,11 +318,64 @@ public class CryptoService {
         this.encryptCipher = new CascadeStreamCipher(encryptCiphers);
     }
 
-    public void decrypt(OutputStream output, InputStream input, int size) throws IOException {
-        CipherOutputStream os = new CipherOutputStream(output, decryptCipher);
-        byte[] encrypted = new byte[size];
-        input.read(encrypted);
-        os.write(encrypted);
+    /**
+     * Uses engines of <code>keySchedule</code> keyed for <code>executor</code>,
+     * so the ciphers should be used only from the thread of <code>executor</code>.
+     */
+    public void setDecoderCiphers(KeySchedule keySchedule, byte[] ivData, EventExecutor executor) {
+        List<StreamCipher> decryptCiphers = createCiphers(keySchedule, ivData, false, executor);
+        Collections.reverse(decryptCiphers);
+
+        this.decryptCipher = new CascadeStreamCipher(decryptCiphers);
+    }
+
+    /**
+     * Uses engines of <code>keySchedule</code> keyed for <code>executor</code>,
+     * so the ciphers should be used only from the thread of <code>executor</code>.
+     */
+    public void setEncoderCiphers(KeySchedule keySchedule, byte[] ivData, EventExecutor executor) {
+        this.encryptCipher = new CascadeStreamCipher(createCiphers(keySchedule, ivData, true, executor));
+    }
+
+    private List<StreamCipher> createCiphers(KeySchedule keySchedule, byte[] ivData, boolean forEncryption, EventExecutor executor) {
+        List<Class<?>> cipherClasses = keySchedule.getCipherClasses();
+        List<KeyParameter> keys = keySchedule.getKeys();
+        List<BlockCipher> engines = keySchedule.getEngines(executor);
+
+        List<StreamCipher> result = new ArrayList<>(cipherClasses.size());
+        int ivIndex = 0;
+        try {
+            for (int i = 0; i < cipherClasses.size(); i++) {
+                int ivSize = CIPHER_IV_SIZE.get(cipherClasses.get(i));
+                byte[] iv = Arrays.copyOfRange(ivData, ivIndex, ivIndex + ivSize);
+                ivIndex += iv.length;
+
+                StreamCipher cipher;
+                if (engines.get(i) != null) {
+                    cipher = new CFBStreamCipher(engines.get(i), keySchedule.getWorkerEngines(i));
+                    cipher.init(forEncryption, new ParametersWithIV(null, iv));
+                } else {
+                    cipher = (StreamCipher) cipherClasses.get(i).newInstance();
+                    cipher.init(forEncryption, new ParametersWithIV(keys.get(i), iv));
+                }
+                result.add(cipher);
+            }
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Decrypts <code>length</code> bytes of <code>buf</code> in place starting from <code>index</code>.
+     * Reader and writer indexes are not modified.
+     */
+    public void decrypt(ByteBuf buf, int index, int length) {
+        process(decryptCipher, buf, index, length);
+    }
+
+    public byte decrypt(byte in) {
+        return decryptCipher.returnByte(in);
     }
 
     public InputStream getDecryptedInputStream(InputStream inputStream) {
@@ -292,12 +386,33 @@ public class CryptoService {
         return new CipherOutputStream(output, encryptCipher);
     }
 
-    public void encrypt(OutputStream output, InputStream input) throws IOException {
-        CipherOutputStream os = new CipherOutputStream(output, encryptCipher);
-        byte[] buf = new byte[input.available()];
-        input.read(buf);
-        os.write(buf);
-        burn(buf);
+    /**
+     * Encrypts <code>length</code> bytes of <code>buf</code> in place starting from <code>index</code>.
+     * Reader and writer indexes are not modified.
+     */
+    public void encrypt(ByteBuf buf, int index, int length) {
+        process(encryptCipher, buf, index, length);
+    }
+
+    private void process(StreamCipher cipher, ByteBuf buf, int index, int length) {
+        if (buf.hasArray()) {
+            byte[] array = buf.array();
+            int offset = buf.arrayOffset() + index;
+            cipher.processBytes(array, offset, length, array, offset);
+            return;
+        }
+
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        for (int i = 0; i < length; ) {
+            int n = Math.min(scratch.length, length - i);
+            buf.getBytes(index + i, scratch, 0, n);
+            cipher.processBytes(scratch, 0, n, scratch, 0);
+            buf.setBytes(index + i, scratch, 0, n);
+            i += n;
+        }
+        burn(scratch);
     }
 
     private static void burn(byte[] buffer) {
@@ -328,4 +443,4 @@ public class CryptoService {
         return params;
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,209 @@
+package com.continent.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs handshake computations (NTRU key generation and encryption).
+ * <p>
+ * Each client has its own queue and workers take tasks from client queues in round-robin order,
+ * so a client sending many handshakes at once can't delay handshakes of other clients.
+ * Both total amount of queued tasks and amount per client are bounded,
+ * task is rejected with {@link RejectedExecutionException} when limit is reached.
+ */
+public class HandshakeExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(HandshakeExecutor.class);
+
+    static class Task {
+
+        final Runnable runnable;
+        final long queuedTime = System.nanoTime();
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+    }
+
+    private final int maxQueueSize;
+    private final int maxClientQueueSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<Object, Deque<Task>> queues = new HashMap<>();
+    private final Deque<Object> readyClients = new ArrayDeque<>();
+    private int queueSize;
+    private boolean shutdown;
+
+    private final Thread[] workers;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    public HandshakeExecutor(int threads, int maxQueueSize, int maxClientQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+        this.maxClientQueueSize = maxClientQueueSize;
+
+        workers = new Thread[threads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("handshake-" + i) {
+                @Override
+                public void run() {
+                    work();
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Returns executor which queues tasks of the specified client.
+     */
+    public Executor forClient(final Object client) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                HandshakeExecutor.this.execute(client, command);
+            }
+        };
+    }
+
+    public void execute(Object client, Runnable command) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor has been shutdown");
+            }
+
+            Deque<Task> queue = queues.get(client);
+            if (queueSize >= maxQueueSize
+                    || (queue != null && queue.size() >= maxClientQueueSize)) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Handshake queue is full. Client: " + client + ", queue size: " + queueSize);
+            }
+
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(client, queue);
+                readyClients.add(client);
+            }
+            queue.add(new Task(command));
+            queueSize++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            lock.lock();
+            try {
+                while (readyClients.isEmpty()) {
+                    if (shutdown) {
+                        return;
+                    }
+                    notEmpty.await();
+                }
+
+                Object client = readyClients.poll();
+                Deque<Task> queue = queues.get(client);
+                task = queue.poll();
+                if (queue.isEmpty()) {
+                    queues.remove(client);
+                } else {
+                    readyClients.add(client);
+                }
+                queueSize--;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            long waitTime = System.nanoTime() - task.queuedTime;
+            totalWaitTime.addAndGet(waitTime);
+            while (true) {
+                long max = maxWaitTime.get();
+                if (waitTime <= max || maxWaitTime.compareAndSet(max, waitTime)) {
+                    break;
+                }
+            }
+
+            executed.incrementAndGet();
+            try {
+                task.runnable.run();
+            } catch (Throwable e) {
+                log.error("Handshake task failed", e);
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return queueSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedClients() {
+        lock.lock();
+        try {
+            return queues.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getExecutedTasks() {
+        return executed.get();
+    }
+
+    public long getRejectedTasks() {
+        return rejected.get();
+    }
+
+    public long getAverageWaitTime(TimeUnit unit) {
+        long count = executed.get();
+        if (count == 0) {
+            return 0;
+        }
+        return unit.convert(totalWaitTime.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxWaitTime(TimeUnit unit) {
+        return unit.convert(maxWaitTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Workers finish already queued tasks and stop.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
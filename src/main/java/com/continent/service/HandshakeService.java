@@ -4,6 +4,7 @@ package com.continent.service;
 import com.continent.engine.rc6.RC6_256_256Engine;
 import com.continent.handler.HandshakePacketSplitter;
 import com.continent.handler.client.ClientFirstPacketDecoder;
+import com.continent.random.PaddingGenerator;
 import com.continent.random.RandomDelegator;
 import com.continent.random.RandomService;
 import com.continent.random.SkeinRandom;
@@ -16,14 +17,8 @@ import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.ChannelGroupFutureListener;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.*;
-import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.util.concurrent.ScheduledFuture;
-import io.netty.util.internal.PlatformDependent;
 import net.sf.ntru.encrypt.EncryptionKeyPair;
 import net.sf.ntru.encrypt.EncryptionPrivateKey;
 import net.sf.ntru.encrypt.EncryptionPublicKey;
@@ -107,7 +102,8 @@ public class HandshakeService {
     private byte[] serverIVSeed;
     private byte[] clientIVSeed;
     
-    private ExecutorService executorService;
+    private Executor executor;
+    private KeyPairPool keyPairPool;
     
     private volatile SessionData clientSession;
     private RandomService randomService;
@@ -117,21 +113,24 @@ public class HandshakeService {
     private byte[] clientSecurityCode;
     private volatile boolean clientInReconnection;
 
-    private Map<byte[], byte[]> id2PubKey;
+    private ClientIdentifier clientIdentifier;
+    private ReplayCache replayCache;
     
     private EventLoopGroup eventLoopGroup;
-    
-    private static final ConcurrentMap<Long, Boolean> authentificatedMacs = PlatformDependent.newConcurrentHashMap();
 
     private List<URI> urls;
     private ChannelGroup group;
+    private SslContext sslContext;
 
     private final RandomDelegator randomDataGenerator;
-    private final Map<SessionId, SessionData> serverSessionIds = new ConcurrentHashMap<SessionId, SessionData>();
-    private Map<SessionId, SessionData> clientSessionIds;
-
-    public HandshakeService(ExecutorService executorService, RandomService randomService, EventLoopGroup eventLoopGroup, String idStr, List<URI> urls, ChannelGroup group) {
-        this.executorService = executorService;
+    private final SessionIndex serverSessionIds = new SessionIndex();
+    private SessionIndex clientSessionIds;
+    private SessionExpiry sessionExpiry;
+
+    public HandshakeService(Executor executor, KeyPairPool keyPairPool, RandomService randomService, EventLoopGroup eventLoopGroup, String idStr, List<URI> urls, ChannelGroup group,
+                            SslContext sslContext) {
+        this.executor = executor;
+        this.keyPairPool = keyPairPool;
         this.randomService = randomService;
         this.eventLoopGroup = eventLoopGroup;
         this.randomDataGenerator = randomService.createRandomDataGenerator();
@@ -146,13 +145,18 @@ public class HandshakeService {
         encryptionKey = calcPubKeyHash();
         this.urls = urls;
         this.group = group;
+        this.sslContext = sslContext;
     }
     
-    public HandshakeService(ExecutorService executorService, RandomService randomService, Map<SessionId, SessionData> clientSessionIds, Map<byte[], byte[]> id2PubKey) {
-        this.executorService = executorService;
+    public HandshakeService(Executor executor, KeyPairPool keyPairPool, RandomService randomService, SessionIndex clientSessionIds,
+                            SessionExpiry sessionExpiry, ClientIdentifier clientIdentifier, ReplayCache replayCache) {
+        this.executor = executor;
+        this.keyPairPool = keyPairPool;
         this.randomService = randomService;
         this.clientSessionIds = clientSessionIds;
-        this.id2PubKey = id2PubKey;
+        this.sessionExpiry = sessionExpiry;
+        this.clientIdentifier = clientIdentifier;
+        this.replayCache = replayCache;
         this.randomDataGenerator = randomService.createRandomDataGenerator();
     }
     
@@ -215,19 +219,11 @@ public class HandshakeService {
                 
                 Bootstrap b = new Bootstrap();
                 b.group(eventLoopGroup)
-                 .channel(NioSocketChannel.class)
+                 .channel(Transport.socketChannelClass())
                  .handler(new ChannelInitializer<Channel>() {
                      @Override
                      protected void initChannel(final Channel ch) throws Exception {
                          if (serverUri.getScheme().equals("https")) {
-                             SslContextBuilder sslContextBuilder = SslContextBuilder.forClient();
-                             ApplicationProtocolConfig apn = new ApplicationProtocolConfig(
-                                     Protocol.ALPN, SelectorFailureBehavior.CHOOSE_MY_LAST_PROTOCOL,
-                                     SelectedListenerFailureBehavior.ACCEPT, Arrays.asList("h2", "http/1.1"));
-                             sslContextBuilder.trustManager(InsecureTrustManagerFactory.INSTANCE);
-                             sslContextBuilder.applicationProtocolConfig(apn);
-                             
-                             SslContext sslContext = sslContextBuilder.build();
                              SSLEngine sslEngine = sslContext.newEngine(ch.alloc(), serverUri.getHost(), serverUri.getPort());
                              
                              SslHandler sslHandler = new SslHandler(sslEngine);
@@ -310,6 +306,7 @@ public class HandshakeService {
         return Futures.transform(keyPairFuture, new Function<EncryptionKeyPair, ByteBuf>() {
             @Override
             public ByteBuf apply(EncryptionKeyPair ntruKeyPair) {
+                KeyPairPool.burn(clientKeyPair);
                 clientKeyPair = ntruKeyPair;
                 byte[] publicKey = clientKeyPair.getPublic().getEncoded();
                 
@@ -353,7 +350,7 @@ public class HandshakeService {
         }
         
         long tagId = ByteBuffer.wrap(truncateTag(tag)).getLong();
-        if (authentificatedMacs.putIfAbsent(tagId, Boolean.TRUE) != null) {
+        if (!replayCache.add(tagId)) {
             close(ctx);
             log.error("Someone attempts to replay previous message. Tag: {} Channel: {}", tagId, ctx.channel());
             return Futures.immediateFuture(null);
@@ -438,7 +435,7 @@ public class HandshakeService {
                         addTagAndRandomTail(result);
                         return result;
                     }
-                }, executorService);
+                }, executor);
             }
         }, MoreExecutors.directExecutor());
         Futures.addCallback(async, new FutureCallback<ByteBuf>() {
@@ -477,23 +474,30 @@ public class HandshakeService {
     }
     
     private ListenableFuture<EncryptionKeyPair> generateKeyPair() {
+        if (keyPairPool != null) {
+            EncryptionKeyPair keyPair = keyPairPool.poll();
+            if (keyPair != null) {
+                return Futures.immediateFuture(keyPair);
+            }
+        }
+        
         return Futures.submitAsync(new AsyncCallable<EncryptionKeyPair>() {
             @Override
             public ListenableFuture<EncryptionKeyPair> call() throws Exception {
                 return Futures.immediateFuture(generateKeyPair(randomService.getKeyGenerator(), true));
             }
-        }, executorService);
+        }, executor);
     }
 
     public static void main(String[] args) throws ExecutionException, InterruptedException {
-        HandshakeService hs = new HandshakeService(Executors.newSingleThreadExecutor(), new RandomService(12, 12), null, null);
+        HandshakeService hs = new HandshakeService(Executors.newSingleThreadExecutor(), null, new RandomService(12, 12), (SessionIndex) null, null, null, null);
         ListenableFuture<EncryptionKeyPair> s = hs.generateKeyPair();
         EncryptionKeyPair t = s.get();
         System.out.println(t.getPublic().getEncoded().length);
         System.out.println(t.getPrivate().getEncoded().length);
     }
 
-    private EncryptionKeyPair generateKeyPair(Random random, boolean multiThreaded) {
+    static EncryptionKeyPair generateKeyPair(Random random, boolean multiThreaded) {
         try {
             Method method = NtruEncrypt.class.getDeclaredMethod("generateKeyPair", Random.class, boolean.class);
             method.setAccessible(true);
@@ -672,6 +676,9 @@ public class HandshakeService {
             close(ctx);
             log.error("Can't decrypt client keys data", e);
             return null;
+        } finally {
+            KeyPairPool.burn(serverKeyPair);
+            serverKeyPair = null;
         }
 
         ByteBuf clientKeyDataBuf = Unpooled.wrappedBuffer(clientKeyData);
@@ -733,12 +740,9 @@ public class HandshakeService {
                 data.setServerIVGenerator(ivServerRandomGenerator);
 
                 for (int i = 0; i < 100; i++) {
-                    byte[] sessionId = new byte[SessionId.SIZE];
-                    clientRandomGenerator.nextBytes(sessionId);
-                    byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
-                    ivClientRandomGenerator.nextBytes(iv);
-                    clientSessionIds.put(new SessionId(sessionId), new SessionData(data, iv));
+                    generateNewClientSessionId(data);
                 }
+                sessionExpiry.add(data);
 
                 String serverCiphersString = HandshakeService.toString(serverCiphers);
                 log.debug("server ciphers: {}", serverCiphersString);
@@ -746,7 +750,7 @@ public class HandshakeService {
                 log.debug("client ciphers: {}", clientCiphersString);
                 return Futures.immediateFuture(buf);
             }
-        }, executorService);
+        }, executor);
     }
 
     private static String toString(List<Object> ciphers) {
@@ -791,6 +795,8 @@ public class HandshakeService {
         }
         
         byte[] inClientSecurityCode = CryptoService.NTRU.decrypt(encryptedSecurityCode, clientKeyPair);
+        KeyPairPool.burn(clientKeyPair);
+        clientKeyPair = null;
         
         if (!Arrays.equals(inClientSecurityCode, clientSecurityCode)) {
             handshakeFuture.setException(new IllegalStateException("Wrong security code on channel: " + ctx.channel()));
@@ -851,22 +857,17 @@ public class HandshakeService {
         }
         
         ByteBuf tagBuf = in.slice(startIndex, endIndex - startIndex);
-        tagBuf.markReaderIndex();
+        byte[] data = new byte[tagBuf.readableBytes()];
+        tagBuf.getBytes(tagBuf.readerIndex(), data);
         
-        for (byte[] id : id2PubKey.keySet()) {
-            byte[] tag = calcMac(tagBuf, id);
-            
-            byte[] calcTruncatedTag = truncateTag(tag);
-            if (Arrays.equals(calcTruncatedTag, truncatedTag)) {
-                this.id = id;
-                pubKey = id2PubKey.get(id);
-                encryptionKey = calcPubKeyHash();
-                return tag;
-            }  
-            tagBuf.resetReaderIndex();
+        ClientIdentifier.Match match = clientIdentifier.identify(data, truncatedTag);
+        if (match != null) {
+            this.id = match.getId();
+            pubKey = match.getPubKey();
+            encryptionKey = calcPubKeyHash();
+            return match.getTag();
         }
 
-        tagBuf.resetReaderIndex();
         log.error("Handshake packet couldn't be decrypted. Wrong auth id used. Channel: {}\n{}", channel, ByteBufUtil.prettyHexDump(tagBuf));
         return null;
     }
@@ -912,48 +913,54 @@ public class HandshakeService {
         return new EncryptionPublicKey(bbos.toByteArray());
     }
 
-    public SessionData getClientSession(byte[] sessionId) {
-        return clientSessionIds.get(new SessionId(sessionId));
+    public SessionData getClientSession(ByteBuf in, int index) {
+        return clientSessionIds.get(in, index);
     }
 
-    public boolean checkClientSession(byte[] sessionId) {
-        SessionData data = clientSessionIds.remove(new SessionId(sessionId));
-        if (data == null) {
-            return false;
+    public SessionData getClientSession(long high, long low) {
+        return clientSessionIds.get(high, low);
+    }
+
+    /**
+     * Removes client session id, so it can't be used again.
+     *
+     * @return IV of session id or <code>null</code> if it has been already used
+     */
+    public byte[] useClientSession(long high, long low, SessionData data) {
+        int sequence = clientSessionIds.remove(high, low, data);
+        if (sequence == -1) {
+            return null;
         }
-        return true;
+        return data.getClientIVs().get(sequence);
     }
 
-    public SessionData getServerSession(byte[] sessionId) {
-        return serverSessionIds.get(new SessionId(sessionId));
+    /**
+     * Removes server session id, so it can't be used again.
+     *
+     * @return IV of session id or <code>null</code> if session id is unknown or has been already used
+     */
+    public byte[] useServerSession(long high, long low) {
+        SessionData data = serverSessionIds.get(high, low);
+        if (data == null) {
+            return null;
+        }
+        int sequence = serverSessionIds.remove(high, low, data);
+        if (sequence == -1) {
+            return null;
+        }
+        return data.getServerIVs().get(sequence);
     }
 
     public void generateNewClientSessionId(SessionData data) {
         byte[] id = new byte[SessionId.SIZE];
-        byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
-        data.getLock().lock();
-        data.getClientSessionGenerator().nextBytes(id);
-        data.getClientIVGenerator().nextBytes(iv);
-        data.getLock().unlock();
-        clientSessionIds.put(new SessionId(id), new SessionData(data, iv));
+        int sequence = data.nextClientSessionId(id);
+        clientSessionIds.put(SessionIndex.high(id), SessionIndex.low(id), data, sequence);
     }
 
     public void generateNewServerSessionId() {
         byte[] id = new byte[SessionId.SIZE];
-        byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
-        clientSession.getLock().lock();
-        clientSession.getServerSessionGenerator().nextBytes(id);
-        clientSession.getServerIVGenerator().nextBytes(iv);
-        clientSession.getLock().unlock();
-        serverSessionIds.put(new SessionId(id), new SessionData(clientSession, iv));
-    }
-
-    public boolean checkServerSession(byte[] sessionId) {
-        SessionData data = serverSessionIds.remove(new SessionId(sessionId));
-        if (data == null) {
-            return false;
-        }
-        return true;
+        int sequence = clientSession.nextServerSessionId(id);
+        serverSessionIds.put(SessionIndex.high(id), SessionIndex.low(id), clientSession, sequence);
     }
 
     private byte[] calcMac(ByteBuf in, byte[] key) {
@@ -984,16 +991,7 @@ public class HandshakeService {
     }
     
     private void addRandomTail(ByteBuf output, int randomLength) {
-        if (randomLength > 0) {
-            for (int i = 0; i < randomLength; ) {
-                for (int rnd = randomDataGenerator.nextInt(),
-                        n = Math.min(randomLength - i, Integer.SIZE/Byte.SIZE);
-                        n-- > 0; rnd >>= Byte.SIZE) {
-                    output.writeByte((byte)rnd);
-                    i++;
-                }
-            }
-        }
+        PaddingGenerator.write(output, randomLength, randomDataGenerator);
     }
     
     private void addTagAndRandomTail(ByteBuf result) {
@@ -1065,7 +1063,7 @@ public class HandshakeService {
     
     private ListenableFuture<ByteBuf> encryptCipherKeys(final byte[] keysDataJoined, final EncryptionPublicKey remotePublicKey,
             final ChannelHandlerContext ctx) {
-        // executed in separate executorService because NTRU encryption is a long-running task
+        // executed in separate executor because NTRU encryption is a long-running task
         return Futures.submitAsync(new AsyncCallable<ByteBuf>() {
             @Override
             public ListenableFuture<ByteBuf> call() throws Exception {
@@ -1081,7 +1079,7 @@ public class HandshakeService {
                 return Futures.immediateFuture(result);
 
             }
-        }, executorService);
+        }, executor);
     }
 
     private void burn(byte[] buffer) {
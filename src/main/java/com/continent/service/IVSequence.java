@@ -0,0 +1,53 @@
+package com.continent.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.crypto.prng.RandomGenerator;
+
+/**
+ * IVs of session ids. IV generator produces them in the same order as session ids are generated,
+ * but each IV is generated only when its session id is used.
+ * IVs of session ids skipped by the peer are kept until used.
+ */
+public class IVSequence {
+
+    private final RandomGenerator generator;
+    private final Map<Integer, byte[]> skipped = new HashMap<>();
+    private int next;
+
+    public IVSequence(RandomGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Returns IV of session id with specified sequence number.
+     *
+     * @return IV or <code>null</code> if it has been already returned
+     */
+    public synchronized byte[] get(int sequence) {
+        if (sequence < next) {
+            return skipped.remove(sequence);
+        }
+
+        while (next < sequence) {
+            byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
+            generator.nextBytes(iv);
+            skipped.put(next++, iv);
+        }
+
+        byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
+        generator.nextBytes(iv);
+        next++;
+        return iv;
+    }
+
+    public synchronized void clear() {
+        for (byte[] iv : skipped.values()) {
+            Arrays.fill(iv, (byte) 0);
+        }
+        skipped.clear();
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.continent.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.continent.random.RandomService;
+import net.sf.ntru.encrypt.EncryptionKeyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps ephemeral NTRU key pairs generated ahead of time by low priority threads,
+ * so key generation isn't on the path of the handshake.
+ * <p>
+ * Each key pair is handed out only once and should be burned by {@link #burn(EncryptionKeyPair)} after use.
+ */
+public class KeyPairPool {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private static final long ERROR_BACKOFF_MILLIS = 1000;
+
+    private final RandomService randomService;
+    private final BlockingQueue<EncryptionKeyPair> keyPairs;
+    private final Thread[] workers;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    public KeyPairPool(RandomService randomService, int size, int threads) {
+        this.randomService = randomService;
+        this.keyPairs = new ArrayBlockingQueue<>(size);
+
+        workers = new Thread[threads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread("keypair-generator-" + i) {
+                @Override
+                public void run() {
+                    generate();
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].setPriority(Thread.MIN_PRIORITY);
+            workers[i].start();
+        }
+    }
+
+    private void generate() {
+        while (!shutdown) {
+            EncryptionKeyPair keyPair;
+            try {
+                keyPair = HandshakeService.generateKeyPair(randomService.getKeyGenerator(), false);
+            } catch (Exception e) {
+                log.error("Can't generate key pair", e);
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                keyPairs.put(keyPair);
+            } catch (InterruptedException e) {
+                burn(keyPair);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes pre-generated key pair from the pool.
+     *
+     * @return key pair or <code>null</code> if pool is empty
+     */
+    public EncryptionKeyPair poll() {
+        EncryptionKeyPair keyPair = keyPairs.poll();
+        if (keyPair == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return keyPair;
+    }
+
+    public int getSize() {
+        return keyPairs.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Stops workers and burns key pairs left in the pool.
+     * Waits for workers to stop, so no key pair is added after the pool is drained.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        List<EncryptionKeyPair> drained = new ArrayList<>();
+        keyPairs.drainTo(drained);
+        for (EncryptionKeyPair keyPair : drained) {
+            burn(keyPair);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Zeroes private key of the key pair.
+     */
+    public static void burn(EncryptionKeyPair keyPair) {
+        if (keyPair != null) {
+            keyPair.getPrivate().clear();
+        }
+    }
+
+}
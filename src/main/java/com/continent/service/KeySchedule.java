@@ -0,0 +1,114 @@
+package com.continent.service;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import com.continent.engine.CFBStreamCipher;
+
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keys of a cipher cascade expanded once per session.
+ * <p>
+ * Block cipher engines keep scratch data in their fields during block processing,
+ * so keyed engines are cached per event executor and shared by all connections served by it.
+ * Executors of parallel CFB decryption get their own engines the same way.
+ * Stream ciphers mix IV into their key setup and are keyed per connection.
+ */
+public class KeySchedule {
+
+    private final List<Class<?>> cipherClasses;
+    private final List<KeyParameter> keys;
+    private final List<CFBStreamCipher.WorkerEngines> workerEngines;
+    private final ConcurrentMap<EventExecutor, List<BlockCipher>> engines = new ConcurrentHashMap<>();
+
+    public KeySchedule(List<Object> ciphers, byte[] keyData) {
+        cipherClasses = new ArrayList<>(ciphers.size());
+        keys = new ArrayList<>(ciphers.size());
+        workerEngines = new ArrayList<>(ciphers.size());
+        int keyIndex = 0;
+        for (Object cipher : ciphers) {
+            Class<?> cipherClass = cipher instanceof Class ? (Class<?>) cipher : cipher.getClass();
+            cipherClasses.add(cipherClass);
+
+            int keySize = CryptoService.CIPHER_KEY_SIZE.get(cipherClass);
+            keys.add(new KeyParameter(keyData, keyIndex, keySize));
+            keyIndex += keySize;
+
+            final int index = workerEngines.size();
+            workerEngines.add(new CFBStreamCipher.WorkerEngines() {
+                @Override
+                public BlockCipher get(EventExecutor executor) {
+                    return getEngines(executor).get(index);
+                }
+            });
+        }
+    }
+
+    List<Class<?>> getCipherClasses() {
+        return cipherClasses;
+    }
+
+    List<KeyParameter> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Returns block cipher engines keyed for <code>executor</code>.
+     * Should be used only from the thread of <code>executor</code>.
+     * Stream cipher positions hold <code>null</code>.
+     */
+    List<BlockCipher> getEngines(EventExecutor executor) {
+        List<BlockCipher> result = engines.get(executor);
+        if (result == null) {
+            result = createEngines();
+            engines.put(executor, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns engines of the block cipher at <code>index</code> for parallel CFB decryption.
+     */
+    CFBStreamCipher.WorkerEngines getWorkerEngines(int index) {
+        return workerEngines.get(index);
+    }
+
+    private List<BlockCipher> createEngines() {
+        List<BlockCipher> result = new ArrayList<>(cipherClasses.size());
+        try {
+            for (int i = 0; i < cipherClasses.size(); i++) {
+                Class<?> cipherClass = cipherClasses.get(i);
+                if (BlockCipher.class.isAssignableFrom(cipherClass)) {
+                    BlockCipher engine = (BlockCipher) cipherClass.newInstance();
+                    engine.init(true, keys.get(i));
+                    result.add(engine);
+                } else {
+                    result.add(null);
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Drops keyed engines and burns the keys. Should be invoked only once usage count of the session is zero,
+     * as ciphers of open connections still use the engines.
+     */
+    public void clear() {
+        engines.clear();
+        for (KeyParameter key : keys) {
+            Arrays.fill(key.getKey(), (byte)0);
+        }
+    }
+
+}
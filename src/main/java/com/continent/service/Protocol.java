@@ -6,4 +6,19 @@ public interface Protocol {
     int DATA_LENGTH_SIZE = 4;
     int RANDOM_DATA_LENGTH_SIZE = 4;
 
+    int MAX_DATA_LENGTH = 66000;
+
+    int STREAM_ID_SIZE = 4;
+    int STREAM_FRAME_TYPE_SIZE = 1;
+    int STREAM_FRAME_HEADER_SIZE = STREAM_ID_SIZE + STREAM_FRAME_TYPE_SIZE + DATA_LENGTH_SIZE;
+
+    byte STREAM_OPEN = 1;
+    byte STREAM_OPEN_ACK = 2;
+    byte STREAM_DATA = 3;
+    byte STREAM_WINDOW_UPDATE = 4;
+    byte STREAM_FIN = 5;
+    byte STREAM_RST = 6;
+
+    int STREAM_WINDOW_SIZE = 256*1024;
+
 }
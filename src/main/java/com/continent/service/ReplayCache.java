@@ -0,0 +1,123 @@
+package com.continent.service;
+
+/**
+ * Remembers handshake tags seen within the time window using fixed amount of memory.
+ * <p>
+ * Window is divided into epochs, each epoch has own Bloom filter. Tag is checked against all filters
+ * and added to the filter of the current epoch. {@link #rotate()} should be invoked once per epoch,
+ * it clears the oldest filter and makes it current, so tag is remembered at least for the window duration.
+ * <p>
+ * Bloom filter may report unseen tag as already seen, probability of it is controlled by filter size
+ * and grows if more tags than expected are added within an epoch.
+ */
+public class ReplayCache {
+
+    private final long[][] filters;
+    private final int bits;
+    private final int hashes;
+    private final int[] insertions;
+    private int current;
+
+    private long replays;
+
+    /**
+     * @param epochs amount of epochs in window
+     * @param capacity expected amount of tags per window
+     * @param falsePositiveProbability desired false positive probability at expected capacity
+     */
+    public ReplayCache(int epochs, int capacity, double falsePositiveProbability) {
+        int epochCapacity = Math.max(1, capacity / epochs);
+        long filterBits = (long) Math.ceil(-epochCapacity * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        if (filterBits > Integer.MAX_VALUE - 63) {
+            throw new IllegalArgumentException("Filter is too large: " + filterBits + " bits");
+        }
+        this.bits = (int) filterBits;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / epochCapacity * Math.log(2)));
+        // additional filter keeps tags of the epoch which is partly out of window
+        this.filters = new long[epochs + 1][(bits + 63) / 64];
+        this.insertions = new int[epochs + 1];
+    }
+
+    /**
+     * Adds tag to the cache.
+     *
+     * @return <code>false</code> if tag has been already added
+     */
+    public synchronized boolean add(long tag) {
+        int h1 = (int) tag;
+        int h2 = (int) (tag >>> 32) | 1;
+
+        for (long[] filter : filters) {
+            if (contains(filter, h1, h2)) {
+                replays++;
+                return false;
+            }
+        }
+
+        long[] filter = filters[current];
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1, h2, i);
+            filter[index >>> 6] |= 1L << index;
+        }
+        insertions[current]++;
+        return true;
+    }
+
+    private boolean contains(long[] filter, int h1, int h2) {
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1, h2, i);
+            if ((filter[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int h1, int h2, int i) {
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+    }
+
+    /**
+     * Starts new epoch, tags of the oldest one are forgotten.
+     */
+    public synchronized void rotate() {
+        current = (current + 1) % filters.length;
+        long[] filter = filters[current];
+        for (int i = 0; i < filter.length; i++) {
+            filter[i] = 0;
+        }
+        insertions[current] = 0;
+    }
+
+    /**
+     * Returns amount of rejected tags. It includes false positives.
+     */
+    public synchronized long getReplays() {
+        return replays;
+    }
+
+    public synchronized int getSize() {
+        int size = 0;
+        for (int count : insertions) {
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * Returns estimated probability of unseen tag to be reported as already seen.
+     */
+    public synchronized double getFalsePositiveProbability() {
+        double notFalsePositive = 1;
+        for (int count : insertions) {
+            double filterProbability = Math.pow(1 - Math.exp(-(double) hashes * count / bits), hashes);
+            notFalsePositive *= 1 - filterProbability;
+        }
+        return 1 - notFalsePositive;
+    }
+
+    public long getMemoryUsage() {
+        return (long) filters.length * filters[0].length * 8;
+    }
+
+}
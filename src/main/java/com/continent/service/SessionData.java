@@ -14,16 +14,24 @@ public class SessionData {
     private final List<Object> clientCiphers;
     private final List<Object> serverCiphers;
     private final byte[] randomTimeouts;
+    private final KeySchedule clientKeySchedule;
+    private final KeySchedule serverKeySchedule;
     private final ReentrantLock lock;
-    private byte[] ivData;
 
     private RandomGenerator clientSessionGenerator;
     private RandomGenerator serverSessionGenerator;
     private RandomGenerator clientIVGenerator;
     private RandomGenerator serverIVGenerator;
+    private IVSequence clientIVs;
+    private IVSequence serverIVs;
+    private int clientSessionSequence;
+    private int serverSessionSequence;
 
     private final AtomicInteger usage;
     private volatile long lastAccessTime = System.currentTimeMillis();
+    private volatile TokenBucket noiseBudget;
+    private volatile SessionExpiry expiry;
+    private long expiryTick = SessionExpiry.NOT_SCHEDULED;
     
     public SessionData(byte[] clientKey, byte[] serverKey,
             List<Object> clientCiphers, List<Object> serverCiphers,
@@ -34,31 +42,52 @@ public class SessionData {
         this.clientCiphers = clientCiphers;
         this.serverCiphers = serverCiphers;
         this.randomTimeouts = randomTimeouts;
+        this.clientKeySchedule = new KeySchedule(clientCiphers, clientKey);
+        this.serverKeySchedule = new KeySchedule(serverCiphers, serverKey);
         this.lock = new ReentrantLock();
         this.usage = new AtomicInteger();
     }
 
-    public SessionData(SessionData data, byte[] iv) {
-        this.clientKey = data.clientKey;
-        this.serverKey = data.serverKey;
-        this.clientCiphers = data.clientCiphers;
-        this.serverCiphers = data.serverCiphers;
-        this.randomTimeouts = data.randomTimeouts;
-        this.clientSessionGenerator = data.clientSessionGenerator;
-        this.serverSessionGenerator = data.serverSessionGenerator;
-        this.clientIVGenerator = data.clientIVGenerator;
-        this.serverIVGenerator = data.serverIVGenerator;
-        this.ivData = iv;
-        this.usage = data.usage;
-        this.lock = data.lock;
-    }
-
     public ReentrantLock getLock() {
         return lock;
     }
 
-    public byte[] getIvData() {
-        return ivData;
+    /**
+     * Generates next client session id.
+     *
+     * @return sequence number of session id
+     */
+    public int nextClientSessionId(byte[] sessionId) {
+        lock.lock();
+        try {
+            clientSessionGenerator.nextBytes(sessionId);
+            return clientSessionSequence++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Generates next server session id.
+     *
+     * @return sequence number of session id
+     */
+    public int nextServerSessionId(byte[] sessionId) {
+        lock.lock();
+        try {
+            serverSessionGenerator.nextBytes(sessionId);
+            return serverSessionSequence++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public IVSequence getClientIVs() {
+        return clientIVs;
+    }
+
+    public IVSequence getServerIVs() {
+        return serverIVs;
     }
 
     public RandomGenerator getClientSessionGenerator() {
@@ -83,14 +112,24 @@ public class SessionData {
 
     public void setClientIVGenerator(RandomGenerator clientIVGenerator) {
         this.clientIVGenerator = clientIVGenerator;
+        this.clientIVs = new IVSequence(clientIVGenerator);
     }
 
     public RandomGenerator getServerIVGenerator() {
         return serverIVGenerator;
     }
 
+    public TokenBucket getNoiseBudget() {
+        return noiseBudget;
+    }
+
+    public void setNoiseBudget(TokenBucket noiseBudget) {
+        this.noiseBudget = noiseBudget;
+    }
+
     public void setServerIVGenerator(RandomGenerator serverIVGenerator) {
         this.serverIVGenerator = serverIVGenerator;
+        this.serverIVs = new IVSequence(serverIVGenerator);
     }
 
     public void clear() {
@@ -98,6 +137,14 @@ public class SessionData {
         clientCiphers.clear();
         Arrays.fill(clientKey, (byte)0);
         Arrays.fill(serverKey, (byte)0);
+        clientKeySchedule.clear();
+        serverKeySchedule.clear();
+        if (clientIVs != null) {
+            clientIVs.clear();
+        }
+        if (serverIVs != null) {
+            serverIVs.clear();
+        }
     }
     
     public byte[] getRandomTimeouts() {
@@ -117,7 +164,27 @@ public class SessionData {
     }
     
     public void updateLastAccessTime() {
-        lastAccessTime = System.currentTimeMillis();
+        updateLastAccessTime(System.currentTimeMillis());
+    }
+
+    void updateLastAccessTime(long time) {
+        lastAccessTime = time;
+        SessionExpiry expiry = this.expiry;
+        if (expiry != null) {
+            expiry.schedule(this);
+        }
+    }
+
+    void setExpiry(SessionExpiry expiry) {
+        this.expiry = expiry;
+    }
+
+    long getExpiryTick() {
+        return expiryTick;
+    }
+
+    void setExpiryTick(long expiryTick) {
+        this.expiryTick = expiryTick;
     }
     
     public long getLastAccessTime() {
@@ -140,4 +207,12 @@ public class SessionData {
         return serverKey;
     }
 
+    public KeySchedule getClientKeySchedule() {
+        return clientKeySchedule;
+    }
+
+    public KeySchedule getServerKeySchedule() {
+        return serverKeySchedule;
+    }
+
 }
@@ -0,0 +1,145 @@
+package com.continent.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expires sessions which haven't been used within timeout.
+ * <p>
+ * Sessions are kept in a timing wheel of buckets ordered by expiration time,
+ * so each tick visits only sessions which are due. Session is moved to another bucket
+ * each time its last access time is updated.
+ * Session which is still in use when it's due leaves the wheel and comes back on next access time update.
+ */
+public class SessionExpiry {
+
+    static final long NOT_SCHEDULED = -1;
+    static final long EXPIRED = -2;
+
+    private final SessionIndex sessions;
+    private final long timeout;
+    private final long tickDuration;
+    private final Set<SessionData>[] wheel;
+    private long currentTick;
+    private int size;
+
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong lastLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionExpiry(SessionIndex sessions, long timeout, long tickDuration) {
+        this.sessions = sessions;
+        this.timeout = timeout;
+        this.tickDuration = tickDuration;
+
+        // session is never scheduled further than timeout from now
+        wheel = new Set[(int) (timeout / tickDuration) + 2];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = Collections.newSetFromMap(new IdentityHashMap<SessionData, Boolean>());
+        }
+        currentTick = System.currentTimeMillis() / tickDuration;
+    }
+
+    public void add(SessionData session) {
+        session.setExpiry(this);
+        schedule(session);
+    }
+
+    synchronized void schedule(SessionData session) {
+        long oldTick = session.getExpiryTick();
+        if (oldTick == EXPIRED) {
+            return;
+        }
+
+        long deadline = session.getLastAccessTime() + timeout;
+        long tick = Math.max((deadline + tickDuration - 1) / tickDuration, currentTick + 1);
+        if (tick == oldTick) {
+            return;
+        }
+
+        if (oldTick == NOT_SCHEDULED) {
+            size++;
+        } else {
+            bucket(oldTick).remove(session);
+        }
+        bucket(tick).add(session);
+        session.setExpiryTick(tick);
+    }
+
+    private Set<SessionData> bucket(long tick) {
+        return wheel[(int) (tick % wheel.length)];
+    }
+
+    /**
+     * Removes sessions due to the specified time from session index and clears their keys.
+     *
+     * @return amount of expired sessions
+     */
+    public int expire(long now) {
+        List<SessionData> dueSessions = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = now / tickDuration;
+            while (currentTick < targetTick) {
+                currentTick++;
+                for (Iterator<SessionData> iterator = bucket(currentTick).iterator(); iterator.hasNext();) {
+                    SessionData session = iterator.next();
+                    // ticks may fall behind more than a wheel round
+                    if (session.getExpiryTick() != currentTick) {
+                        continue;
+                    }
+
+                    iterator.remove();
+                    size--;
+                    if (session.getUsage() > 0) {
+                        session.setExpiryTick(NOT_SCHEDULED);
+                    } else {
+                        session.setExpiryTick(EXPIRED);
+                        dueSessions.add(session);
+                    }
+                }
+            }
+        }
+
+        for (SessionData session : dueSessions) {
+            long lag = now - (session.getLastAccessTime() + timeout);
+            lastLag.set(lag);
+            while (true) {
+                long max = maxLag.get();
+                if (lag <= max || maxLag.compareAndSet(max, lag)) {
+                    break;
+                }
+            }
+
+            sessions.removeSession(session);
+            session.clear();
+        }
+        expired.addAndGet(dueSessions.size());
+        return dueSessions.size();
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * Returns time in milliseconds between deadline and actual expiration of last expired session.
+     */
+    public long getLastLag() {
+        return lastLag.get();
+    }
+
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+}
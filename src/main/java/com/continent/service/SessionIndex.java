@@ -0,0 +1,223 @@
+package com.continent.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Maps 16-byte session id to its session and sequence number.
+ * <p>
+ * Session id is stored as two longs in open addressing tables split into segments
+ * guarded by own lock, so lookup doesn't allocate any objects.
+ */
+public class SessionIndex {
+
+    private static final int SEGMENTS = 16;
+
+    static class Segment {
+
+        long[] highs;
+        long[] lows;
+        SessionData[] sessions;
+        int[] sequences;
+        int size;
+
+        Segment(int capacity) {
+            highs = new long[capacity];
+            lows = new long[capacity];
+            sessions = new SessionData[capacity];
+            sequences = new int[capacity];
+        }
+
+        int find(long high, long low) {
+            int mask = sessions.length - 1;
+            for (int i = hash(high, low) & mask; sessions[i] != null; i = (i + 1) & mask) {
+                if (highs[i] == high && lows[i] == low) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void put(long high, long low, SessionData session, int sequence) {
+            if ((size + 1) * 2 > sessions.length) {
+                resize(sessions.length * 2);
+            }
+
+            int mask = sessions.length - 1;
+            int i = hash(high, low) & mask;
+            for (; sessions[i] != null; i = (i + 1) & mask) {
+                if (highs[i] == high && lows[i] == low) {
+                    break;
+                }
+            }
+            if (sessions[i] == null) {
+                size++;
+            }
+            highs[i] = high;
+            lows[i] = low;
+            sessions[i] = session;
+            sequences[i] = sequence;
+        }
+
+        void delete(int index) {
+            int mask = sessions.length - 1;
+            // shift following entries of the probe sequence back, so no tombstones are needed
+            int gap = index;
+            for (int i = (index + 1) & mask; sessions[i] != null; i = (i + 1) & mask) {
+                int home = hash(highs[i], lows[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    highs[gap] = highs[i];
+                    lows[gap] = lows[i];
+                    sessions[gap] = sessions[i];
+                    sequences[gap] = sequences[i];
+                    gap = i;
+                }
+            }
+            sessions[gap] = null;
+            size--;
+        }
+
+        void resize(int capacity) {
+            long[] oldHighs = highs;
+            long[] oldLows = lows;
+            SessionData[] oldSessions = sessions;
+            int[] oldSequences = sequences;
+
+            highs = new long[capacity];
+            lows = new long[capacity];
+            sessions = new SessionData[capacity];
+            sequences = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldSessions.length; i++) {
+                if (oldSessions[i] != null) {
+                    put(oldHighs[i], oldLows[i], oldSessions[i], oldSequences[i]);
+                }
+            }
+        }
+
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public SessionIndex() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(64);
+        }
+    }
+
+    private static int hash(long high, long low) {
+        long h = high ^ low;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private Segment segment(long high, long low) {
+        return segments[(int) ((high ^ low) >>> 60)];
+    }
+
+    public static long high(byte[] sessionId) {
+        return getLong(sessionId, 0);
+    }
+
+    public static long low(byte[] sessionId) {
+        return getLong(sessionId, 8);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    public SessionData get(ByteBuf buf, int index) {
+        return get(buf.getLong(index), buf.getLong(index + 8));
+    }
+
+    public SessionData get(long high, long low) {
+        Segment segment = segment(high, low);
+        synchronized (segment) {
+            int index = segment.find(high, low);
+            if (index == -1) {
+                return null;
+            }
+            return segment.sessions[index];
+        }
+    }
+
+    public void put(long high, long low, SessionData session, int sequence) {
+        Segment segment = segment(high, low);
+        synchronized (segment) {
+            segment.put(high, low, session, sequence);
+        }
+    }
+
+    /**
+     * Removes session id if it belongs to the specified session.
+     *
+     * @return sequence number of session id or <code>-1</code> if it hasn't been found
+     */
+    public int remove(long high, long low, SessionData session) {
+        Segment segment = segment(high, low);
+        synchronized (segment) {
+            int index = segment.find(high, low);
+            if (index == -1 || segment.sessions[index] != session) {
+                return -1;
+            }
+            int sequence = segment.sequences[index];
+            segment.delete(index);
+            return sequence;
+        }
+    }
+
+    /**
+     * Removes all session ids of the specified session.
+     */
+    public void removeSession(SessionData session) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int i = 0; i < segment.sessions.length;) {
+                    if (segment.sessions[i] == session) {
+                        // entry shifted into this slot should be checked too
+                        segment.delete(i);
+                    } else {
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns distinct sessions.
+     */
+    public List<SessionData> getSessions() {
+        Set<SessionData> result = Collections.newSetFromMap(new IdentityHashMap<SessionData, Boolean>());
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (SessionData session : segment.sessions) {
+                    if (session != null) {
+                        result.add(session);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+}
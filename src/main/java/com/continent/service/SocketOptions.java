@@ -0,0 +1,84 @@
+package com.continent.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.EpollChannelOption;
+
+/**
+ * Options of tunnel sockets. Options which are not set keep system defaults.
+ * <code>TCP_NOTSENT_LOWAT</code> and <code>TCP_QUICKACK</code> are applied only with epoll transport.
+ */
+public class SocketOptions {
+
+    Integer sendBufferSize;
+    Integer receiveBufferSize;
+    Long notSentLowat;
+    boolean quickAck;
+
+    public Integer getSendBufferSize() {
+        return sendBufferSize;
+    }
+    public void setSendBufferSize(Integer sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+    public void setReceiveBufferSize(Integer receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public Long getNotSentLowat() {
+        return notSentLowat;
+    }
+    public void setNotSentLowat(Long notSentLowat) {
+        this.notSentLowat = notSentLowat;
+    }
+
+    public boolean isQuickAck() {
+        return quickAck;
+    }
+    public void setQuickAck(boolean quickAck) {
+        this.quickAck = quickAck;
+    }
+
+    Map<ChannelOption<?>, Object> toMap() {
+        Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+        if (sendBufferSize != null) {
+            options.put(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize != null) {
+            options.put(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (Transport.EPOLL) {
+            if (notSentLowat != null) {
+                options.put(EpollChannelOption.TCP_NOTSENT_LOWAT, notSentLowat);
+            }
+            if (quickAck) {
+                options.put(EpollChannelOption.TCP_QUICKACK, true);
+            }
+        }
+        return options;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void apply(Bootstrap bootstrap) {
+        for (Entry<ChannelOption<?>, Object> entry : toMap().entrySet()) {
+            bootstrap.option((ChannelOption<Object>) entry.getKey(), entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void applyToChildren(ServerBootstrap bootstrap) {
+        for (Entry<ChannelOption<?>, Object> entry : toMap().entrySet()) {
+            bootstrap.childOption((ChannelOption<Object>) entry.getKey(), entry.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.continent.service;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds TLS contexts shared by all connections, so TLS sessions can be resumed.
+ */
+public final class SslContexts {
+
+    private static final Logger log = LoggerFactory.getLogger(SslContexts.class);
+
+    private static final long SESSION_CACHE_SIZE = 20480;
+    private static final long SESSION_TIMEOUT = TimeUnit.HOURS.toSeconds(1);
+
+    private SslContexts() {
+    }
+
+    /**
+     * Uses certificate and private key in PEM format or self-signed certificate if they aren't defined.
+     * OpenSSL (BoringSSL) is used if available.
+     */
+    public static SslContext forServer(String certificateFile, String privateKeyFile, Random random) {
+        try {
+            SslContextBuilder builder;
+            if (certificateFile != null && privateKeyFile != null) {
+                builder = SslContextBuilder.forServer(new File(certificateFile), new File(privateKeyFile));
+            } else {
+                SelfSignedCertificate ssc = new SelfSignedCertificate("localhost");
+                builder = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey());
+            }
+
+            SslProvider provider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+            SslContext context = builder
+                    .sslProvider(provider)
+                    .applicationProtocolConfig(new ApplicationProtocolConfig(
+                            Protocol.ALPN, SelectorFailureBehavior.CHOOSE_MY_LAST_PROTOCOL,
+                            SelectedListenerFailureBehavior.ACCEPT, Arrays.asList("http/1.1")))
+                    .sessionCacheSize(SESSION_CACHE_SIZE)
+                    .sessionTimeout(SESSION_TIMEOUT)
+                    .build();
+
+            if (context.sessionContext() instanceof OpenSslSessionContext) {
+                byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+                byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+                byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+                random.nextBytes(name);
+                random.nextBytes(hmacKey);
+                random.nextBytes(aesKey);
+                ((OpenSslSessionContext) context.sessionContext()).setTicketKeys(new OpenSslSessionTicketKey(name, hmacKey, aesKey));
+            }
+
+            log.info("TLS provider: {}", provider);
+            return context;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * JDK provider is used on client side since it's able to resume sessions by server host and port.
+     */
+    public static SslContext forClient() {
+        try {
+            return SslContextBuilder.forClient()
+                    .sslProvider(SslProvider.JDK)
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .applicationProtocolConfig(new ApplicationProtocolConfig(
+                            Protocol.ALPN, SelectorFailureBehavior.CHOOSE_MY_LAST_PROTOCOL,
+                            SelectedListenerFailureBehavior.ACCEPT, Arrays.asList("h2", "http/1.1")))
+                    .sessionCacheSize(SESSION_CACHE_SIZE)
+                    .sessionTimeout(SESSION_TIMEOUT)
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
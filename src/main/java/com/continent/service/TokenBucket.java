@@ -0,0 +1,41 @@
+package com.continent.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of some amount (like bytes) per second. Unused amount is accumulated up to one second of rate.
+ */
+public class TokenBucket {
+
+    private final long rate;
+    private double tokens;
+    private long lastTime = System.nanoTime();
+
+    public TokenBucket(long rate) {
+        this.rate = rate;
+        this.tokens = rate;
+    }
+
+    public synchronized boolean tryAcquire(long amount) {
+        long now = System.nanoTime();
+        tokens = Math.min(rate, tokens + (double) (now - lastTime) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastTime = now;
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    /**
+     * Returns acquired amount which hasn't been used.
+     */
+    public synchronized void release(long amount) {
+        tokens = Math.min(rate, tokens + amount);
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+}
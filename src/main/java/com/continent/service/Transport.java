@@ -0,0 +1,86 @@
+package com.continent.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uses native epoll transport on Linux and NIO transport otherwise.
+ */
+public final class Transport {
+
+    private static final Logger log = LoggerFactory.getLogger(Transport.class);
+
+    public static final boolean EPOLL = Epoll.isAvailable();
+
+    static {
+        if (EPOLL) {
+            log.info("Using epoll transport");
+        } else {
+            log.info("Using NIO transport, epoll is not available: {}", Epoll.unavailabilityCause().toString());
+        }
+    }
+
+    private Transport() {
+    }
+
+    /**
+     * @param threads amount of threads, <code>0</code> means default amount
+     */
+    public static EventLoopGroup newEventLoopGroup(int threads) {
+        if (EPOLL) {
+            return new EpollEventLoopGroup(threads);
+        }
+        return new NioEventLoopGroup(threads);
+    }
+
+    public static Class<? extends Channel> socketChannelClass() {
+        if (EPOLL) {
+            return EpollSocketChannel.class;
+        }
+        return NioSocketChannel.class;
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass() {
+        if (EPOLL) {
+            return EpollServerSocketChannel.class;
+        }
+        return NioServerSocketChannel.class;
+    }
+
+    /**
+     * Binds <code>listeners</code> server channels to the same port with SO_REUSEPORT,
+     * so kernel distributes incoming connections between them and each of them accepts on its own event loop
+     * of the bootstrap parent group. Only single channel is bound if epoll isn't available.
+     */
+    public static List<ChannelFuture> bind(ServerBootstrap bootstrap, int port, int listeners) {
+        if (!EPOLL) {
+            listeners = 1;
+        }
+        if (listeners > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        List<ChannelFuture> futures = new ArrayList<>(listeners);
+        for (int i = 0; i < listeners; i++) {
+            futures.add(bootstrap.bind(port));
+        }
+        return futures;
+    }
+
+}
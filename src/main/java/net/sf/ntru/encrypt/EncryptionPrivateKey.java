@@ -39,6 +39,7 @@ import net.sf.ntru.polynomial.IntegerPolynomial;
 import net.sf.ntru.polynomial.Polynomial;
 import net.sf.ntru.polynomial.ProductFormPolynomial;
 import net.sf.ntru.polynomial.SparseTernaryPolynomial;
+import net.sf.ntru.polynomial.TernaryPolynomial;
 import net.sf.ntru.util.ArrayEncoder;
 
 /**
@@ -126,6 +127,18 @@ public class EncryptionPrivateKey {
             fp = t.toIntegerPolynomial().invertF3();
     }
     
+    /**
+     * Overwrites the key polynomials with zeros. The key can't be used after this.
+     */
+    public void clear() {
+        if (t instanceof TernaryPolynomial)
+            ((TernaryPolynomial)t).clear();
+        else if (t instanceof ProductFormPolynomial)
+            ((ProductFormPolynomial)t).clear();
+        if (fp != null)
+            fp.clear();
+    }
+    
     /**
      * Converts the key to a byte array
      * @return the encoded key
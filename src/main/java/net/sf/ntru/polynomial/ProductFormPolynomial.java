@@ -113,6 +113,15 @@ public class ProductFormPolynomial implements Polynomial {
         return all;
     }
     
+    /**
+     * Sets all coefficients of the three polynomials to zero.
+     */
+    public void clear() {
+        f1.clear();
+        f2.clear();
+        f3.clear();
+    }
+    
     @Override
     public IntegerPolynomial mult(IntegerPolynomial b) {
         IntegerPolynomial c = f1.mult(b);
@@ -0,0 +1,115 @@
+package com.continent.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.continent.codec.MockedRandomService;
+import com.continent.handler.client.CipherClientEncoderHandler;
+import com.continent.random.RandomDelegator;
+import com.continent.random.RandomService;
+import com.continent.service.HandshakeService;
+import com.continent.service.SessionData;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    private ConnectionPool createPool(DefaultEventLoopGroup group) {
+        final SessionData sessionData = new SessionData(new byte[0], new byte[0], Collections.emptyList(), Collections.emptyList(), new byte[0]);
+        new MockUp<HandshakeService>() {
+            @Mock
+            public SessionData getClientSession() {
+                return sessionData;
+            }
+        };
+        new MockUp<TunnelConnector>() {
+            @Mock
+            public ChannelFuture connect(EventLoop eventLoop, Class<? extends Channel> channelClass, RandomDelegator randomGenerator,
+                                         byte tunnelType, String mappedHost, boolean autoRead, ChannelHandler... handlers) {
+                assertThat(tunnelType).isEqualTo(CipherClientEncoderHandler.SOCKS5_TUNNEL);
+                assertThat(mappedHost).isNull();
+                EmbeddedChannel channel = new EmbeddedChannel(handlers);
+                channels.add(channel);
+                return channel.newSucceededFuture();
+            }
+        };
+
+        RandomService randomService = MockedRandomService.create();
+        HandshakeService handshakeService = new HandshakeService(null, null, randomService, null, null, null, null);
+        TunnelConnector connector = new TunnelConnector(null, randomService, handshakeService, null, false, null, null);
+        return new ConnectionPool(connector, randomService, handshakeService, group, EmbeddedChannel.class, 2, 50);
+    }
+
+    private void expire(EmbeddedChannel channel) {
+        channel.runScheduledPendingTasks();
+        ByteBuf randomPacket = channel.readOutbound();
+        assertThat(randomPacket).isNotNull();
+        randomPacket.release();
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    public void testRetirement() throws InterruptedException {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+        try {
+            ConnectionPool pool = createPool(group);
+            pool.start();
+            assertThat(channels).hasSize(2);
+            assertThat(pool.getSize()).isEqualTo(2);
+
+            // idle pool isn't refilled after its connections are retired
+            Thread.sleep(100);
+            expire(channels.get(0));
+            expire(channels.get(1));
+            assertThat(channels).hasSize(2);
+            assertThat(pool.getSize()).isZero();
+            assertThat(pool.getRetired()).isEqualTo(2);
+
+            assertThat(pool.acquire(new ChannelInboundHandlerAdapter())).isNull();
+            assertThat(pool.getMisses()).isEqualTo(1);
+            assertThat(channels).hasSize(4);
+
+            final AtomicBoolean active = new AtomicBoolean();
+            Channel channel = pool.acquire(new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelActive(ChannelHandlerContext ctx) throws Exception {
+                    active.set(true);
+                }
+            });
+            assertThat(channel).isSameAs(channels.get(2));
+            channels.get(2).runPendingTasks();
+            assertThat(active.get()).isTrue();
+            assertThat(pool.getHits()).isEqualTo(1);
+            assertThat(channels).hasSize(5);
+
+            // only connection established before the last acquire is replaced
+            Thread.sleep(100);
+            expire(channels.get(3));
+            expire(channels.get(4));
+            assertThat(channels).hasSize(6);
+            assertThat(pool.getSize()).isEqualTo(1);
+
+            pool.shutdown();
+            assertThat(channels.get(5).isOpen()).isFalse();
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+}
@@ -2,29 +2,33 @@ package com.continent.codec;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
+import com.continent.engine.Threefish1024Engine;
+import com.continent.engine.Threefish256Engine;
+import com.continent.engine.Threefish512Engine;
 import com.continent.engine.TwofishEngine;
 import com.continent.engine.rc6.RC6_256_256Engine;
 import com.continent.random.RandomService;
 import com.continent.service.CryptoService;
 import com.continent.service.HandshakeService;
+import com.continent.service.KeySchedule;
 import org.bouncycastle.crypto.engines.CAST6Engine;
 import org.junit.Test;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 
 public class CascadeCipherTest {
 
     private static final RandomService randomService = MockedRandomService.create();
 
     @Test
-    public void testTwoInCascade() throws IOException {
+    public void testTwoInCascade() {
         byte[] data = new byte[16];
         for (int i = 0; i < data.length; i++) {
             data[i] = (byte) i;
@@ -43,7 +47,7 @@ public class CascadeCipherTest {
     }
     
     @Test
-    public void testThreeInCascade() throws IOException {
+    public void testThreeInCascade() {
         byte[] data = new byte[16];
         for (int i = 0; i < data.length; i++) {
             data[i] = (byte) i;
@@ -66,8 +70,44 @@ public class CascadeCipherTest {
         testChipers(data, cascadeCiphers, encrypted3, randomService);
     }
 
+    @Test
+    public void testLargeThreefishCascade() {
+        Random random = new Random(12);
+        byte[] keyData = new byte[CryptoService.MAX_KEYS_DATA_SIZE];
+        random.nextBytes(keyData);
+        byte[] iv = new byte[128 + 64 + 32];
+        random.nextBytes(iv);
+        byte[] data = new byte[200000];
+        random.nextBytes(data);
+        List<Object> ciphers = Arrays.<Object>asList(Threefish1024Engine.class, Threefish512Engine.class, Threefish256Engine.class);
+
+        // session path
+        KeySchedule keySchedule = new KeySchedule(ciphers, keyData);
+        CryptoService encryptor = new CryptoService();
+        encryptor.setEncoderCiphers(keySchedule, iv, ImmediateEventExecutor.INSTANCE);
+        ByteBuf encrypted = Unpooled.wrappedBuffer(Arrays.copyOf(data, data.length));
+        encryptor.encrypt(encrypted, 0, data.length);
+
+        CryptoService decryptor = new CryptoService();
+        decryptor.setDecoderCiphers(keySchedule, iv, ImmediateEventExecutor.INSTANCE);
+        ByteBuf decrypted = encrypted.copy();
+        decryptor.decrypt(decrypted, 0, data.length);
+        assertThat(decrypted.array()).isEqualTo(data);
+
+        // container path
+        CryptoService containerEncryptor = new CryptoService();
+        containerEncryptor.setEncoderCiphers(Arrays.<Object>asList(new Threefish1024Engine(), new Threefish512Engine(), new Threefish256Engine()), keyData, iv);
+        ByteBuf containerEncrypted = Unpooled.wrappedBuffer(Arrays.copyOf(data, data.length));
+        containerEncryptor.encrypt(containerEncrypted, 0, data.length);
+        assertThat(containerEncrypted.array()).isEqualTo(encrypted.array());
 
-    protected void testChipers(byte[] data, List<Object> ciphers, byte[] encryptedData, RandomService randomService) throws IOException {
+        CryptoService containerDecryptor = new CryptoService();
+        containerDecryptor.setDecoderCiphers(Arrays.<Object>asList(new Threefish1024Engine(), new Threefish512Engine(), new Threefish256Engine()), iv, keyData);
+        containerDecryptor.decrypt(containerEncrypted, 0, data.length);
+        assertThat(containerEncrypted.array()).isEqualTo(data);
+    }
+
+    protected void testChipers(byte[] data, List<Object> ciphers, byte[] encryptedData, RandomService randomService) {
         CryptoService ch = new CryptoService();
         
         byte[] serverKeyData = new byte[CryptoService.MAX_KEYS_DATA_SIZE];
@@ -79,18 +119,12 @@ public class CascadeCipherTest {
         ch.setEncoderCiphers(ciphers, serverKeyData, iv);
         ch.setDecoderCiphers(ciphers, iv, serverKeyData);
         
-        ByteArrayInputStream input = new ByteArrayInputStream(data);
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-        ch.encrypt(output, input);
-        
-        System.out.println(Arrays.toString(output.toByteArray()));
-        assertThat(output.toByteArray()).isEqualTo(encryptedData);
+        ByteBuf buf = Unpooled.copiedBuffer(data);
+        ch.encrypt(buf, buf.readerIndex(), buf.readableBytes());
+        assertThat(ByteBufUtil.getBytes(buf)).isEqualTo(encryptedData);
 
-        ByteArrayInputStream input2 = new ByteArrayInputStream(output.toByteArray());
-        ByteArrayOutputStream output2 = new ByteArrayOutputStream();
-        ch.decrypt(output2, input2, input2.available());
-        assertThat(output2.toByteArray()).isEqualTo(data);
+        ch.decrypt(buf, buf.readerIndex(), buf.readableBytes());
+        assertThat(ByteBufUtil.getBytes(buf)).isEqualTo(data);
     }
     
 }
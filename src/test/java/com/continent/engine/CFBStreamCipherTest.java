@@ -0,0 +1,154 @@
+package com.continent.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.continent.engine.rc6.RC6_256_1024Engine;
+import com.continent.engine.rc6.RC6_256_2048Engine;
+import com.continent.engine.rc6.RC6_256_256Engine;
+import com.continent.engine.rc6.RC6_256_512Engine;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.StreamCipher;
+import org.bouncycastle.crypto.engines.CAST6Engine;
+import org.bouncycastle.crypto.engines.SerpentEngine;
+import org.bouncycastle.crypto.modes.CFBBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.Test;
+
+import io.netty.util.concurrent.EventExecutor;
+
+public class CFBStreamCipherTest {
+
+    private static final List<Class<? extends BlockCipher>> CIPHERS = Arrays.asList(
+            TwofishEngine.class, SerpentEngine.class, CAST6Engine.class,
+            RC6_256_256Engine.class, RC6_256_512Engine.class, RC6_256_1024Engine.class, RC6_256_2048Engine.class,
+            Threefish256Engine.class, Threefish512Engine.class, Threefish1024Engine.class);
+
+    private static final int[] KEY_SIZES = {32, 32, 32, 32, 64, 128, 256, 32, 64, 128};
+
+    @Test
+    public void testCompatibility() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < CIPHERS.size(); i++) {
+            Class<? extends BlockCipher> cipherClass = CIPHERS.get(i);
+            byte[] key = new byte[KEY_SIZES[i]];
+            random.nextBytes(key);
+            byte[] iv = new byte[cipherClass.newInstance().getBlockSize()];
+            random.nextBytes(iv);
+            ParametersWithIV params = new ParametersWithIV(new KeyParameter(key), iv);
+
+            byte[] data = new byte[10000];
+            random.nextBytes(data);
+
+            BlockCipher bc = cipherClass.newInstance();
+            StreamCipher expectedCipher = new CFBBlockCipher(bc, bc.getBlockSize()*8);
+            expectedCipher.init(true, params);
+            byte[] expected = new byte[data.length];
+            expectedCipher.processBytes(data, 0, data.length, expected, 0);
+
+            StreamCipher encryptCipher = new CFBStreamCipher(cipherClass.newInstance());
+            encryptCipher.init(true, params);
+            byte[] encrypted = process(encryptCipher, data, random);
+            assertThat(encrypted).isEqualTo(expected);
+
+            StreamCipher decryptCipher = new CFBStreamCipher(cipherClass.newInstance());
+            decryptCipher.init(false, params);
+            byte[] decrypted = process(decryptCipher, encrypted, random);
+            assertThat(decrypted).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void testParallelDecryption() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < CIPHERS.size(); i++) {
+            Class<? extends BlockCipher> cipherClass = CIPHERS.get(i);
+            byte[] key = new byte[KEY_SIZES[i]];
+            random.nextBytes(key);
+            byte[] iv = new byte[cipherClass.newInstance().getBlockSize()];
+            random.nextBytes(iv);
+            ParametersWithIV params = new ParametersWithIV(new KeyParameter(key), iv);
+
+            byte[] data = new byte[300000 + random.nextInt(1000)];
+            random.nextBytes(data);
+
+            StreamCipher encryptCipher = new CFBStreamCipher(cipherClass.newInstance());
+            encryptCipher.init(true, params);
+            byte[] encrypted = new byte[data.length];
+            encryptCipher.processBytes(data, 0, data.length, encrypted, 0);
+
+            StreamCipher decryptCipher = new CFBStreamCipher(cipherClass.newInstance(), null, 4);
+            decryptCipher.init(false, params);
+            byte[] decrypted = Arrays.copyOf(encrypted, encrypted.length);
+            int offset = 0;
+            while (offset < decrypted.length) {
+                int len = Math.min(decrypted.length - offset, 1 + random.nextInt(120000));
+                decryptCipher.processBytes(decrypted, offset, len, decrypted, offset);
+                offset += len;
+            }
+            assertThat(decrypted).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void testWorkerEngines() throws Exception {
+        Random random = new Random(8);
+        final byte[] key = new byte[128];
+        random.nextBytes(key);
+        byte[] iv = new byte[128];
+        random.nextBytes(iv);
+
+        byte[] data = new byte[100000];
+        random.nextBytes(data);
+
+        StreamCipher encryptCipher = new CFBStreamCipher(new Threefish1024Engine());
+        encryptCipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        byte[] encrypted = new byte[data.length];
+        encryptCipher.processBytes(data, 0, data.length, encrypted, 0);
+
+        final ConcurrentMap<EventExecutor, BlockCipher> engines = new ConcurrentHashMap<>();
+        CFBStreamCipher.WorkerEngines workers = new CFBStreamCipher.WorkerEngines() {
+            @Override
+            public BlockCipher get(EventExecutor executor) {
+                assertThat(executor.inEventLoop()).isTrue();
+                BlockCipher engine = engines.get(executor);
+                if (engine == null) {
+                    engine = new Threefish1024Engine();
+                    engine.init(true, new KeyParameter(key));
+                    engines.put(executor, engine);
+                }
+                return engine;
+            }
+        };
+        BlockCipher cipher = new Threefish1024Engine();
+        cipher.init(true, new KeyParameter(key));
+        StreamCipher decryptCipher = new CFBStreamCipher(cipher, workers, 4);
+        decryptCipher.init(false, new ParametersWithIV(null, iv));
+        decryptCipher.processBytes(encrypted, 0, encrypted.length, encrypted, 0);
+
+        assertThat(encrypted).isEqualTo(data);
+        assertThat(engines).isNotEmpty();
+    }
+
+    private byte[] process(StreamCipher cipher, byte[] data, Random random) {
+        byte[] result = Arrays.copyOf(data, data.length);
+        int offset = 0;
+        while (offset < result.length) {
+            int len = Math.min(result.length - offset, random.nextInt(700));
+            if (len == 1) {
+                result[offset] = cipher.returnByte(result[offset]);
+            } else {
+                cipher.processBytes(result, offset, len, result, offset);
+            }
+            offset += len;
+        }
+        return result;
+    }
+
+}
@@ -59,6 +59,28 @@ public class SkeinStreamEngineTest {
         assertThat(in2).isEqualTo(in);
     }
 
+    @Test
+    public void testChunks() {
+        SkeinStreamEngine engine = create512Engine();
+        SkeinStreamEngine byteEngine = create512Engine();
+
+        byte[] in = new byte[5000];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (byte) i;
+        }
+        byte[] out = new byte[in.length];
+        int offset = 0;
+        for (int len : new int[] {1, 7, 1000, 3, 2000, 1989}) {
+            engine.processBytes(in, offset, len, out, offset);
+            offset += len;
+        }
+
+        // keystream doesn't depend on sizes of processed chunks
+        for (int i = 0; i < in.length; i++) {
+            assertThat(out[i]).isEqualTo(byteEngine.returnByte(in[i]));
+        }
+    }
+
     protected SkeinStreamEngine create256Engine() {
         byte[] password = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 2, 3};
         byte[] iv = new byte[] {10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 1, 2};
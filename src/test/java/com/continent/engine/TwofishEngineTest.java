@@ -0,0 +1,68 @@
+package com.continent.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.Test;
+
+public class TwofishEngineTest {
+
+    @Test
+    public void testCompatibility() {
+        Random random = new Random(5);
+        for (boolean fullKeying : new boolean[] {true, false}) {
+            // the same engines are re-keyed with every key size
+            BlockCipher encryptEngine = new TwofishEngine(16, fullKeying);
+            BlockCipher decryptEngine = new TwofishEngine(16, fullKeying);
+            for (int keySize = 8; keySize <= 32; keySize += 8) {
+                byte[] key = new byte[keySize];
+                random.nextBytes(key);
+                KeyParameter params = new KeyParameter(key);
+
+                BlockCipher expectedEngine = new org.bouncycastle.crypto.engines.TwofishEngine();
+                expectedEngine.init(true, params);
+                encryptEngine.init(true, params);
+                decryptEngine.init(false, params);
+
+                for (int j = 0; j < 20; j++) {
+                    byte[] block = new byte[16];
+                    random.nextBytes(block);
+
+                    byte[] expected = new byte[16];
+                    expectedEngine.processBlock(block, 0, expected, 0);
+                    byte[] encrypted = new byte[17];
+                    encryptEngine.processBlock(block, 0, encrypted, 1);
+                    assertThat(Arrays.copyOfRange(encrypted, 1, 17)).isEqualTo(expected);
+
+                    byte[] decrypted = new byte[16];
+                    decryptEngine.processBlock(expected, 0, decrypted, 0);
+                    assertThat(decrypted).isEqualTo(block);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPartialKeying() {
+        Random random = new Random(6);
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        BlockCipher fullEngine = new TwofishEngine();
+        fullEngine.init(true, new KeyParameter(key));
+        BlockCipher partialEngine = new TwofishEngine(24, false);
+        partialEngine.init(true, new KeyParameter(key));
+
+        byte[] block = new byte[16];
+        random.nextBytes(block);
+        byte[] expected = new byte[16];
+        fullEngine.processBlock(block, 0, expected, 0);
+        byte[] actual = new byte[16];
+        partialEngine.processBlock(block, 0, actual, 0);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.continent.engine.rc6;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+public class RC6_NEngineTest {
+
+    // engine, key, plaintext, ciphertext produced by former BigInteger-based implementation
+    private static final String[][] VECTORS = {
+            {"RC6_256_256NEngine",
+                "4c9326bb9805fa8f85882c12eae724cef0c62e118427f5948aefa5c428c43c93a69a323a734632dae3b40aa98428525a8b2882ce1db70511aa21a207cc6f5c69",
+                "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                "1ac839f9196d7ed0147b0cfdc0f4f25560643c81dbe4c7cdcd6b4b91808dac1f"},
+            {"RC6_256_256NEngine",
+                "4c9326bb9805fa8f85882c12eae724cef0c62e118427f5948aefa5c428c43c93a69a323a734632dae3b40aa98428525a8b2882ce1db70511aa21a207cc6f5c69",
+                "60d8a8cf13559d223ccc06f2a7df67dd9e8c192748ac3fb673dd07e9b6d79c93",
+                "6ff3290a81bbb26a79befa9fbb5840f9f751d5811ed443ac6487051769675f0f"},
+            {"RC6_512_512Engine",
+                "cd0cc8ffd2b6950a1af53c8af64e682315413efaf232ac7a9d618f286743e48a1513918c51d5a576009ff217f2ff64cff30782718cdbe7671251b169875cfa12",
+                "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                "9fcbd8023466101afda1fc8183c820aaae39bf85c90bb69846667615396bb6b67bd6e8b88e0246daab53d14efa45bf345bfdd4d2a42f5c87b85d4a9b494a0a7b"},
+            {"RC6_512_512Engine",
+                "cd0cc8ffd2b6950a1af53c8af64e682315413efaf232ac7a9d618f286743e48a1513918c51d5a576009ff217f2ff64cff30782718cdbe7671251b169875cfa12",
+                "b3e75749f2c21eede12c532b855c02bbcc05ca7c8c27111c708573f15fcfdc1df8fefee35d0f1352a76f27897bd7a58c4b005992ea254c608ab10d415d7bd75b",
+                "0820be057204aebaaa96598ad94f6670569f4f6cff4b1f915002e6cd508267fad358bec6a052bea4e076aff9ab158dc4fba45f56f193f64f4b16d9a42f043f8f"},
+            {"RC6_512_1024Engine",
+                "87ebd6b0fcab2723adf011f604a51019adec7255a31f6d6ce7d38f4294334257d7545c6b7ee0ec71460c1a203403693b45ce73bf3a549c0f4279f477390f0635",
+                "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                "a774b5ed6da566561cea5553c535dc07841466a50b40a0ea86efa2bb01ecf35dd46a8862bb20623a9f1488a9f40d25ce71c4f582e319e902b5a960ddf8e6bbef"},
+            {"RC6_512_1024Engine",
+                "87ebd6b0fcab2723adf011f604a51019adec7255a31f6d6ce7d38f4294334257d7545c6b7ee0ec71460c1a203403693b45ce73bf3a549c0f4279f477390f0635",
+                "b43d4e2b574fb13f34dc8f738412f46cf6e4734832c6045e08cf4880274a4c75bf9ad6823f0a018a31f2927f4e3e028cbc2bd3559517e0b3dd85d4515cb5f859",
+                "f76d71249fc60a17c1dd6c4d10e6fdfeddd8ccf976e57f8084579f23d9b0f254feeac5d2536928d223cc65da5636c12c5c0c09981e178bd6c4dfc57287845661"},
+            {"RC6_1024_1024Engine",
+                "e938bfd7afb6424b69e2c50d5435d0ef232746e6707671d617846bbb7ab7d1eafcf3ec8e67c224effe9df83739725e1dce033e0c5499c1bb4168531a47dd77e9123d9b8eeba7cc3e839dd3950654812ff204c648d7cb2d0a9adb66b52dfa8e691cf111f10143fa9482dbcd13a7c6ab4ad8423042110b1cb193b460d9bbd8ba2b",
+                "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                "2d84ac9555daf523d7500691285ebf8f5cbff706c086e380b5c470348e8cde5d62bf55abe3081ee224fe719e4aee93548c5f1a4338713a877386da9a3c2daec6e16f0793de82ce302dee2624217b4887d19bd4497555c769d71a4a9c1eaf35639ef9afbda7e39c028aa8ce359a9d3a2e4203c79ce317d822f85297651e85e65c"},
+            {"RC6_1024_1024Engine",
+                "e938bfd7afb6424b69e2c50d5435d0ef232746e6707671d617846bbb7ab7d1eafcf3ec8e67c224effe9df83739725e1dce033e0c5499c1bb4168531a47dd77e9123d9b8eeba7cc3e839dd3950654812ff204c648d7cb2d0a9adb66b52dfa8e691cf111f10143fa9482dbcd13a7c6ab4ad8423042110b1cb193b460d9bbd8ba2b",
+                "5c7fcf7e3435913ef69ef7236c7b36435eb92ba32032661455e978a5217b514ceb5f61ac545a3a48d11564c089b125f377a61d28a4364e243952bd72b8ebe45034da6465f44c0f9e78bf3b26958eaf9aa638d80143750d644d3cd0e3789d0622771b6ae3ebfa814e42a7c1470f07050d878d08be260e5151d6cbf6f5815ce608",
+                "0e69fb2a735bcad2f13a679071a3851295091e002436707e8d80dfc56777267f4971304569875e60918a95c90d15b7eb464d27b6e103898b2ec47d28aee9e6195b62bcb8344d08e6b65427f4a0bfb6f81e8f66110df71461023e9cdc3037544000f94c64ef853bd3a73d38ff5690de78d784b8296d6d28762372212c11615c38"}
+    };
+
+    @Test
+    public void testKnownAnswers() throws Exception {
+        for (String[] vector : VECTORS) {
+            Class<?> engineClass = Class.forName(RC6_NEngine.class.getPackage().getName() + "." + vector[0]);
+            KeyParameter params = new KeyParameter(Hex.decode(vector[1]));
+            byte[] block = Hex.decode(vector[2]);
+            byte[] expected = Hex.decode(vector[3]);
+
+            BlockCipher encryptEngine = (BlockCipher) engineClass.newInstance();
+            encryptEngine.init(true, params);
+            BlockCipher decryptEngine = (BlockCipher) engineClass.newInstance();
+            decryptEngine.init(false, params);
+
+            int blockSize = encryptEngine.getBlockSize();
+            assertThat(blockSize).isEqualTo(block.length);
+            byte[] encrypted = new byte[blockSize + 1];
+            encryptEngine.processBlock(block, 0, encrypted, 1);
+            assertThat(Arrays.copyOfRange(encrypted, 1, blockSize + 1)).isEqualTo(expected);
+
+            byte[] decrypted = new byte[blockSize];
+            decryptEngine.processBlock(expected, 0, decrypted, 0);
+            assertThat(decrypted).isEqualTo(block);
+
+            Random random = new Random(3);
+            for (int j = 0; j < 20; j++) {
+                random.nextBytes(block);
+                encryptEngine.processBlock(block, 0, encrypted, 0);
+                decryptEngine.processBlock(encrypted, 0, decrypted, 0);
+                assertThat(decrypted).isEqualTo(block);
+            }
+        }
+    }
+
+}
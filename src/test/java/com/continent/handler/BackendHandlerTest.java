@@ -0,0 +1,120 @@
+package com.continent.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.continent.random.RandomDelegator;
+import com.continent.random.SkeinRandom;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+public class BackendHandlerTest {
+
+    static class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+        final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.incrementAndGet();
+            super.flush(ctx);
+        }
+
+    }
+
+    @Test
+    public void testBatchedRelay() {
+        final AtomicInteger reads = new AtomicInteger();
+        FlushCounter flushCounter = new FlushCounter();
+        EmbeddedChannel peer = new EmbeddedChannel(flushCounter);
+        EmbeddedChannel source = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void read(ChannelHandlerContext ctx) throws Exception {
+                reads.incrementAndGet();
+                super.read(ctx);
+            }
+        }, new BackendHandler(peer));
+        peer.pipeline().addLast(new BackendHandler(source));
+        source.config().setAutoRead(false);
+        reads.set(0);
+
+        source.writeInbound(Unpooled.buffer().writeZero(10), Unpooled.buffer().writeZero(20));
+        assertThat(flushCounter.flushes.get()).isEqualTo(1);
+        assertThat(reads.get()).isEqualTo(1);
+        assertThat(((ByteBuf) peer.readOutbound()).release()).isTrue();
+        assertThat(((ByteBuf) peer.readOutbound()).release()).isTrue();
+
+        // reading is paused while peer isn't writable
+        peer.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        source.writeInbound(Unpooled.buffer().writeZero(10));
+        assertThat(reads.get()).isEqualTo(1);
+        assertThat(((ByteBuf) peer.readOutbound()).release()).isTrue();
+
+        peer.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        peer.runPendingTasks();
+        assertThat(reads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDelayedRelay() throws InterruptedException {
+        RandomDelegator random = new RandomDelegator(new SkeinRandom(new byte[32]));
+        FlushCounter flushCounter = new FlushCounter();
+        EmbeddedChannel peer = new EmbeddedChannel(flushCounter);
+        EmbeddedChannel source = new EmbeddedChannel(new BackendHandler(random, peer, 50));
+        peer.pipeline().addLast(new BackendHandler(source));
+
+        for (int i = 0; i < 100; i++) {
+            source.writeInbound(Unpooled.buffer().writeInt(i));
+        }
+        assertThat(peer.outboundMessages()).isEmpty();
+
+        int received = 0;
+        long start = System.currentTimeMillis();
+        while (received < 100 && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(5);
+            source.runPendingTasks();
+            for (ByteBuf msg = peer.readOutbound(); msg != null; msg = peer.readOutbound()) {
+                assertThat(msg.readInt()).isEqualTo(received++);
+                msg.release();
+            }
+        }
+        assertThat(received).isEqualTo(100);
+        // single timer writes all due messages at once
+        assertThat(flushCounter.flushes.get()).isLessThan(100);
+    }
+
+    @Test
+    public void testDelayedDataOnClose() {
+        RandomDelegator random = new RandomDelegator(new SkeinRandom(new byte[32]));
+        EmbeddedChannel peer = new EmbeddedChannel();
+        EmbeddedChannel source = new EmbeddedChannel(new BackendHandler(random, peer, 10000));
+
+        source.writeInbound(Unpooled.buffer().writeInt(1), Unpooled.buffer().writeInt(2));
+        assertThat(peer.outboundMessages()).isEmpty();
+        source.close();
+        assertThat(((ByteBuf) peer.readOutbound()).readInt()).isEqualTo(1);
+        assertThat(((ByteBuf) peer.readOutbound()).readInt()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAutoReadPause() {
+        EmbeddedChannel peer = new EmbeddedChannel();
+        EmbeddedChannel source = new EmbeddedChannel(new BackendHandler(peer));
+        peer.pipeline().addLast(new BackendHandler(source));
+
+        peer.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        source.writeInbound(Unpooled.buffer().writeZero(10));
+        assertThat(source.config().isAutoRead()).isFalse();
+        assertThat(((ByteBuf) peer.readOutbound()).release()).isTrue();
+
+        peer.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        peer.runPendingTasks();
+        assertThat(source.config().isAutoRead()).isTrue();
+    }
+
+}
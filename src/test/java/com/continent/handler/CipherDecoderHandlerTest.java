@@ -0,0 +1,175 @@
+package com.continent.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.continent.engine.TwofishEngine;
+import com.continent.random.RandomDelegator;
+import com.continent.random.SkeinRandom;
+import com.continent.service.CryptoService;
+import com.continent.service.Protocol;
+import com.continent.handler.server.CipherServerEncoderHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.bouncycastle.crypto.engines.SerpentEngine;
+import org.junit.Test;
+
+public class CipherDecoderHandlerTest {
+
+    private final byte[] keyData = new byte[CryptoService.MAX_KEYS_DATA_SIZE];
+    private final byte[] iv = new byte[CryptoService.MAX_IV_SIZE];
+    private final byte[] payload = new byte[2000];
+
+    public CipherDecoderHandlerTest() {
+        Random random = new Random(5);
+        random.nextBytes(keyData);
+        random.nextBytes(iv);
+        random.nextBytes(payload);
+    }
+
+    private List<Object> ciphers() {
+        return Arrays.<Object>asList(new TwofishEngine(), new SerpentEngine());
+    }
+
+    private CryptoService encryptor() {
+        CryptoService cryptoService = new CryptoService();
+        cryptoService.setEncoderCiphers(ciphers(), keyData, iv);
+        return cryptoService;
+    }
+
+    private EmbeddedChannel decoder() {
+        CryptoService cryptoService = new CryptoService();
+        cryptoService.setDecoderCiphers(ciphers(), iv, keyData);
+        return new EmbeddedChannel(new CipherDecoderHandler(cryptoService));
+    }
+
+    private ByteBuf randomPacket(int randomLength) {
+        return Unpooled.wrappedBuffer(CipherEncoderHandler.RANDOM_PACKET_HEADER.copy(), Unpooled.copyInt(randomLength));
+    }
+
+    /**
+     * Encodes payload split into frames of different sizes with zero-length random frames in between.
+     */
+    private byte[] encode() {
+        RandomDelegator random = new RandomDelegator(new SkeinRandom(new byte[32]));
+        // session id is sent before the first frame only
+        EmbeddedChannel encoder = new EmbeddedChannel(new CipherServerEncoderHandler(random, new byte[0], encryptor()));
+        encoder.writeOutbound(randomPacket(10));
+        encoder.writeOutbound(Unpooled.wrappedBuffer(payload, 0, 1));
+        encoder.writeOutbound(Unpooled.wrappedBuffer(payload, 1, 99));
+        encoder.writeOutbound(randomPacket(0));
+        encoder.writeOutbound(Unpooled.wrappedBuffer(payload, 100, 1900));
+        encoder.writeOutbound(randomPacket(300));
+
+        ByteBuf wire = Unpooled.buffer();
+        for (ByteBuf buf = encoder.readOutbound(); buf != null; buf = encoder.readOutbound()) {
+            wire.writeBytes(buf);
+            buf.release();
+        }
+        byte[] result = new byte[wire.readableBytes()];
+        wire.readBytes(result);
+        wire.release();
+        return result;
+    }
+
+    private byte[] readPayload(EmbeddedChannel decoder) {
+        ByteBuf result = Unpooled.buffer();
+        for (ByteBuf buf = decoder.readInbound(); buf != null; buf = decoder.readInbound()) {
+            assertThat(buf.isReadable()).isTrue();
+            assertThat(buf.refCnt()).isPositive();
+            result.writeBytes(buf);
+            buf.release();
+        }
+        byte[] bytes = new byte[result.readableBytes()];
+        result.readBytes(bytes);
+        result.release();
+        return bytes;
+    }
+
+    @Test
+    public void testSplitFrames() {
+        byte[] wire = encode();
+        for (int split = 1; split < wire.length; split++) {
+            EmbeddedChannel decoder = decoder();
+            ByteBuf first = Unpooled.copiedBuffer(wire, 0, split);
+            ByteBuf second = Unpooled.copiedBuffer(wire, split, wire.length - split);
+            decoder.writeInbound(first);
+            decoder.writeInbound(second);
+            assertThat(readPayload(decoder)).isEqualTo(payload);
+            assertThat(first.refCnt()).isZero();
+            assertThat(second.refCnt()).isZero();
+            assertThat(decoder.finish()).isFalse();
+        }
+
+        EmbeddedChannel decoder = decoder();
+        for (byte b : wire) {
+            decoder.writeInbound(Unpooled.wrappedBuffer(new byte[] {b}));
+        }
+        assertThat(readPayload(decoder)).isEqualTo(payload);
+    }
+
+    @Test
+    public void testRetainedSlices() {
+        byte[] wire = encode();
+        EmbeddedChannel decoder = decoder();
+        ByteBuf input = Unpooled.wrappedBuffer(wire);
+        decoder.writeInbound(input);
+
+        List<ByteBuf> slices = new ArrayList<>();
+        for (ByteBuf buf = decoder.readInbound(); buf != null; buf = decoder.readInbound()) {
+            slices.add(buf);
+        }
+        // payload is decrypted in place and emitted as slices of the input
+        assertThat(slices).hasSize(3);
+        assertThat(input.refCnt()).isEqualTo(3);
+        int offset = 0;
+        for (ByteBuf slice : slices) {
+            assertThat(slice.unwrap()).isSameAs(input);
+            byte[] bytes = new byte[slice.readableBytes()];
+            slice.readBytes(bytes);
+            assertThat(bytes).isEqualTo(Arrays.copyOfRange(payload, offset, offset + bytes.length));
+            offset += bytes.length;
+            slice.release();
+        }
+        assertThat(offset).isEqualTo(payload.length);
+        assertThat(input.refCnt()).isZero();
+    }
+
+    @Test
+    public void testReadOnlyInput() {
+        byte[] wire = encode();
+        byte[] original = wire.clone();
+        EmbeddedChannel decoder = decoder();
+        ByteBuf input = Unpooled.wrappedBuffer(wire).asReadOnly();
+        decoder.writeInbound(input);
+
+        // read-only input is copied before decryption
+        assertThat(readPayload(decoder)).isEqualTo(payload);
+        assertThat(wire).isEqualTo(original);
+        assertThat(input.refCnt()).isZero();
+    }
+
+    @Test
+    public void testInvalidLength() {
+        for (int[] lengths : new int[][] {{Protocol.MAX_DATA_LENGTH + 1, 0}, {-1, 0}, {10, Protocol.MAX_DATA_LENGTH + 1}}) {
+            ByteBuf input = Unpooled.buffer();
+            input.writeInt(lengths[0]);
+            input.writeInt(lengths[1]);
+            input.writeZero(100);
+            encryptor().encrypt(input, 0, input.readableBytes());
+
+            EmbeddedChannel decoder = decoder();
+            decoder.writeInbound(input);
+            // rest of the input is discarded once channel is closed
+            assertThat(decoder.isOpen()).isFalse();
+            assertThat(decoder.inboundMessages()).isEmpty();
+            assertThat(input.refCnt()).isZero();
+        }
+    }
+
+}
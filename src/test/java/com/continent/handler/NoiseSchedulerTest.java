@@ -0,0 +1,140 @@
+package com.continent.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.continent.random.RandomDelegator;
+import com.continent.random.SkeinRandom;
+import com.continent.service.SessionData;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.junit.Test;
+
+public class NoiseSchedulerTest {
+
+    static class QueuedExecutor extends SingleThreadEventExecutor {
+
+        final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+        QueuedExecutor() {
+            super(null, new DefaultThreadFactory("queued-executor"), true);
+        }
+
+        @Override
+        protected void run() {
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+    }
+
+    static class CountingHandler extends RandomPacketHandler {
+
+        final AtomicInteger sent;
+
+        CountingHandler(AtomicInteger sent) {
+            super(new RandomDelegator(new SkeinRandom(new byte[32])), new EmbeddedChannel());
+            this.sent = sent;
+        }
+
+        @Override
+        void sendRandomPacket() {
+            sent.incrementAndGet();
+        }
+
+    }
+
+    @Test
+    public void testBudget() {
+        NoiseScheduler scheduler = new NoiseScheduler(1000, 300);
+        SessionData session = new SessionData(new byte[0], new byte[0], Collections.emptyList(), Collections.emptyList(), new byte[0]);
+        EmbeddedChannel tunnel1 = new EmbeddedChannel();
+        tunnel1.attr(NoiseScheduler.SESSION).set(session);
+        EmbeddedChannel tunnel2 = new EmbeddedChannel();
+        tunnel2.attr(NoiseScheduler.SESSION).set(session);
+        EmbeddedChannel tunnel3 = new EmbeddedChannel();
+
+        // session budget is shared by its tunnels
+        assertThat(scheduler.acquire(tunnel1, 200)).isTrue();
+        assertThat(scheduler.acquire(tunnel2, 200)).isFalse();
+        assertThat(scheduler.acquire(tunnel2, 100)).isTrue();
+
+        assertThat(scheduler.acquire(tunnel3, 600)).isTrue();
+        assertThat(scheduler.acquire(tunnel3, 200)).isFalse();
+
+        assertThat(scheduler.getPackets()).isEqualTo(3);
+        assertThat(scheduler.getBytes()).isEqualTo(900);
+        assertThat(scheduler.getSuppressed()).isEqualTo(2);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSessionBudgetRefund() {
+        NoiseScheduler scheduler = new NoiseScheduler(100, 300);
+        SessionData session = new SessionData(new byte[0], new byte[0], Collections.emptyList(), Collections.emptyList(), new byte[0]);
+        EmbeddedChannel tunnel = new EmbeddedChannel();
+        tunnel.attr(NoiseScheduler.SESSION).set(session);
+        EmbeddedChannel otherTunnel = new EmbeddedChannel();
+
+        assertThat(scheduler.acquire(otherTunnel, 100)).isTrue();
+        // rejected by budget of all tunnels, session budget is kept
+        assertThat(scheduler.acquire(tunnel, 200)).isFalse();
+        assertThat(session.getNoiseBudget().tryAcquire(300)).isTrue();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testBatches() throws InterruptedException {
+        NoiseScheduler scheduler = new NoiseScheduler(0, 0);
+        QueuedExecutor executor = new QueuedExecutor();
+        QueuedExecutor otherExecutor = new QueuedExecutor();
+        AtomicInteger sent = new AtomicInteger();
+        try {
+            scheduler.schedule(new CountingHandler(sent), executor, 0);
+            NoiseScheduler.Batch batch = (NoiseScheduler.Batch) executor.tasks.poll(5, TimeUnit.SECONDS);
+            assertThat(batch).isNotNull();
+
+            // pending batch isn't dispatched again
+            scheduler.schedule(new CountingHandler(sent), executor, 0);
+            long start = System.currentTimeMillis();
+            while (batchSize(batch) < 2 && System.currentTimeMillis() - start < 5000) {
+                Thread.sleep(5);
+            }
+            assertThat(batchSize(batch)).isEqualTo(2);
+            assertThat(executor.tasks).isEmpty();
+
+            batch.run();
+            assertThat(sent.get()).isEqualTo(2);
+            assertThat(batchSize(batch)).isZero();
+
+            // emptied batch is dispatched with the next packet
+            scheduler.schedule(new CountingHandler(sent), executor, 0);
+            assertThat(executor.tasks.poll(5, TimeUnit.SECONDS)).isSameAs(batch);
+
+            // each executor has its own batch
+            scheduler.schedule(new CountingHandler(sent), otherExecutor, 0);
+            Runnable otherBatch = otherExecutor.tasks.poll(5, TimeUnit.SECONDS);
+            assertThat(otherBatch).isNotNull().isNotSameAs(batch);
+            otherBatch.run();
+            assertThat(sent.get()).isEqualTo(3);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private int batchSize(NoiseScheduler.Batch batch) {
+        synchronized (batch) {
+            return batch.handlers.size();
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.continent.handler.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.continent.handler.mux.MultiplexedStream;
+import com.continent.handler.mux.StreamFrame;
+import com.continent.service.Protocol;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+
+public class ClientStreamMultiplexerTest {
+
+    private void open(ClientStreamMultiplexer multiplexer, EmbeddedChannel tunnel, EmbeddedChannel peer) {
+        Promise<MultiplexedStream> promise = tunnel.eventLoop().newPromise();
+        multiplexer.open("example.com:443", peer, promise);
+        tunnel.runPendingTasks();
+        StreamFrame frame = tunnel.readOutbound();
+        assertThat(frame.getType()).isEqualTo(Protocol.STREAM_OPEN);
+        frame.getPayload().release();
+    }
+
+    private void close(EmbeddedChannel tunnel, EmbeddedChannel peer) {
+        peer.close();
+        tunnel.runPendingTasks();
+        StreamFrame frame = tunnel.readOutbound();
+        assertThat(frame.getType()).isEqualTo(Protocol.STREAM_FIN);
+    }
+
+    @Test
+    public void testIdleCheck() {
+        ClientStreamMultiplexer multiplexer = new ClientStreamMultiplexer(null);
+        EmbeddedChannel tunnel = new EmbeddedChannel(multiplexer);
+        multiplexer.setChannel(tunnel);
+        assertThat(tunnel.runScheduledPendingTasks()).isEqualTo(-1);
+
+        EmbeddedChannel peer = new EmbeddedChannel();
+        open(multiplexer, tunnel, peer);
+        close(tunnel, peer);
+        assertThat(tunnel.runScheduledPendingTasks()).isPositive();
+
+        // new stream cancels pending idle check
+        EmbeddedChannel otherPeer = new EmbeddedChannel();
+        open(multiplexer, tunnel, otherPeer);
+        assertThat(tunnel.runScheduledPendingTasks()).isEqualTo(-1);
+
+        close(tunnel, otherPeer);
+        assertThat(tunnel.runScheduledPendingTasks()).isPositive();
+        assertThat(multiplexer.isOpen()).isTrue();
+    }
+
+}
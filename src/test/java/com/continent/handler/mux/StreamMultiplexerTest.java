@@ -0,0 +1,201 @@
+package com.continent.handler.mux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.continent.service.Protocol;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+public class StreamMultiplexerTest {
+
+    static class TestMultiplexer extends StreamMultiplexer {
+
+        MultiplexedStream add(int streamId, EmbeddedChannel tunnel, EmbeddedChannel peer) {
+            MultiplexedStream stream = new MultiplexedStream(streamId, tunnel, this, peer, null);
+            streams.put(streamId, stream);
+            return stream;
+        }
+
+        @Override
+        protected void onOpen(ChannelHandlerContext ctx, int streamId, ByteBuf target) {
+        }
+
+        @Override
+        protected void onOpenAck(MultiplexedStream stream) {
+        }
+
+    }
+
+    @Test
+    public void testFrameCodec() {
+        EmbeddedChannel encoder = new EmbeddedChannel(StreamFrameEncoder.INSTANCE);
+        encoder.writeOutbound(StreamFrame.open(1, "example.com:443"));
+        encoder.writeOutbound(StreamFrame.data(3, Unpooled.wrappedBuffer(new byte[] {1, 2, 3})));
+        encoder.writeOutbound(StreamFrame.windowUpdate(5, 1000));
+
+        ByteBuf encoded = Unpooled.buffer();
+        for (Object msg = encoder.readOutbound(); msg != null; msg = encoder.readOutbound()) {
+            encoded.writeBytes((ByteBuf) msg);
+            ((ByteBuf) msg).release();
+        }
+
+        EmbeddedChannel decoder = new EmbeddedChannel(new StreamFrameDecoder());
+        // frames split at arbitrary boundaries by cipher decoder
+        while (encoded.isReadable()) {
+            decoder.writeInbound(encoded.readRetainedSlice(Math.min(7, encoded.readableBytes())));
+        }
+        encoded.release();
+
+        StreamFrame open = decoder.readInbound();
+        assertThat(open.getStreamId()).isEqualTo(1);
+        assertThat(open.getType()).isEqualTo(Protocol.STREAM_OPEN);
+        assertThat(open.getPayload().toString(StandardCharsets.UTF_8)).isEqualTo("example.com:443");
+        open.getPayload().release();
+
+        StreamFrame data = decoder.readInbound();
+        assertThat(data.getStreamId()).isEqualTo(3);
+        assertThat(data.getType()).isEqualTo(Protocol.STREAM_DATA);
+        assertThat(data.getPayload().readableBytes()).isEqualTo(3);
+        data.getPayload().release();
+
+        StreamFrame update = decoder.readInbound();
+        assertThat(update.getType()).isEqualTo(Protocol.STREAM_WINDOW_UPDATE);
+        assertThat(update.getPayload().readInt()).isEqualTo(1000);
+        update.getPayload().release();
+
+        assertThat(decoder.<Object>readInbound()).isNull();
+    }
+
+    @Test
+    public void testFlowControl() {
+        TestMultiplexer multiplexer = new TestMultiplexer();
+        EmbeddedChannel tunnel = new EmbeddedChannel(multiplexer);
+        final AtomicInteger reads = new AtomicInteger();
+        EmbeddedChannel peer = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void read(ChannelHandlerContext ctx) throws Exception {
+                reads.incrementAndGet();
+                super.read(ctx);
+            }
+        });
+        peer.config().setOption(ChannelOption.AUTO_READ, false);
+        reads.set(0);
+        MultiplexedStream stream = multiplexer.add(7, tunnel, peer);
+
+        stream.send(Unpooled.buffer().writeZero(Protocol.STREAM_WINDOW_SIZE - 1));
+        assertThat(reads.get()).isEqualTo(1);
+        stream.send(Unpooled.buffer().writeZero(1));
+        assertThat(reads.get()).isEqualTo(1);
+
+        stream.flush();
+        StreamFrame first = tunnel.readOutbound();
+        assertThat(first.getType()).isEqualTo(Protocol.STREAM_DATA);
+        first.getPayload().release();
+        StreamFrame second = tunnel.readOutbound();
+        second.getPayload().release();
+
+        tunnel.writeInbound(StreamFrame.windowUpdate(7, 100));
+        assertThat(reads.get()).isEqualTo(2);
+
+        // receiver returns credit after half of window has been written to peer
+        tunnel.writeInbound(StreamFrame.data(7, Unpooled.buffer().writeZero(Protocol.STREAM_WINDOW_SIZE / 2)));
+        ByteBuf written = peer.readOutbound();
+        assertThat(written.readableBytes()).isEqualTo(Protocol.STREAM_WINDOW_SIZE / 2);
+        written.release();
+
+        StreamFrame update = tunnel.readOutbound();
+        assertThat(update.getType()).isEqualTo(Protocol.STREAM_WINDOW_UPDATE);
+        assertThat(update.getPayload().readInt()).isEqualTo(Protocol.STREAM_WINDOW_SIZE / 2);
+
+        tunnel.writeInbound(StreamFrame.fin(7));
+        assertThat(multiplexer.getStreamsAmount()).isZero();
+        assertThat(peer.isOpen()).isFalse();
+    }
+
+    @Test
+    public void testInvalidWindowUpdate() {
+        TestMultiplexer multiplexer = new TestMultiplexer();
+        EmbeddedChannel tunnel = new EmbeddedChannel(multiplexer);
+        EmbeddedChannel peer = new EmbeddedChannel();
+        multiplexer.add(7, tunnel, peer);
+        multiplexer.add(9, tunnel, new EmbeddedChannel());
+
+        ByteBuf payload = Unpooled.buffer().writeShort(1);
+        tunnel.writeInbound(new StreamFrame(7, Protocol.STREAM_WINDOW_UPDATE, payload));
+        assertThat(payload.refCnt()).isZero();
+
+        // only the stream is reset, tunnel stays open
+        StreamFrame rst = tunnel.readOutbound();
+        assertThat(rst.getStreamId()).isEqualTo(7);
+        assertThat(rst.getType()).isEqualTo(Protocol.STREAM_RST);
+        rst.getPayload().release();
+        assertThat(peer.isOpen()).isFalse();
+        assertThat(tunnel.isOpen()).isTrue();
+        assertThat(multiplexer.getStreamsAmount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTunnelBackpressure() {
+        TestMultiplexer multiplexer = new TestMultiplexer();
+        EmbeddedChannel tunnel = new EmbeddedChannel(multiplexer);
+        final AtomicInteger reads = new AtomicInteger();
+        EmbeddedChannel peer = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void read(ChannelHandlerContext ctx) throws Exception {
+                reads.incrementAndGet();
+                super.read(ctx);
+            }
+        });
+        peer.config().setOption(ChannelOption.AUTO_READ, false);
+        reads.set(0);
+        MultiplexedStream stream = multiplexer.add(7, tunnel, peer);
+
+        // reading is paused while tunnel isn't writable even though window is open
+        tunnel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        stream.send(Unpooled.buffer().writeZero(10));
+        assertThat(reads.get()).isZero();
+
+        tunnel.writeInbound(StreamFrame.windowUpdate(7, 100));
+        assertThat(reads.get()).isZero();
+
+        tunnel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        tunnel.runPendingTasks();
+        assertThat(reads.get()).isEqualTo(1);
+
+        StreamFrame frame = tunnel.readOutbound();
+        assertThat(frame.getType()).isEqualTo(Protocol.STREAM_DATA);
+        frame.getPayload().release();
+    }
+
+    @Test
+    public void testBatchedFlush() {
+        TestMultiplexer multiplexer = new TestMultiplexer();
+        EmbeddedChannel tunnel = new EmbeddedChannel(multiplexer);
+        final AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel peer = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushes.incrementAndGet();
+                super.flush(ctx);
+            }
+        });
+        multiplexer.add(7, tunnel, peer);
+
+        tunnel.writeInbound(StreamFrame.data(7, Unpooled.buffer().writeZero(10)),
+                StreamFrame.data(7, Unpooled.buffer().writeZero(20)),
+                StreamFrame.data(7, Unpooled.buffer().writeZero(30)));
+        assertThat(flushes.get()).isEqualTo(1);
+        for (int i = 0; i < 3; i++) {
+            assertThat(((ByteBuf) peer.readOutbound()).release()).isTrue();
+        }
+    }
+
+}
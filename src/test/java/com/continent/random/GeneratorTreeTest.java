@@ -0,0 +1,57 @@
+package com.continent.random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class GeneratorTreeTest {
+
+    @Test
+    public void testThreadGenerators() throws InterruptedException {
+        final GeneratorTree tree = new GeneratorTree(new RandomDelegator(new SkeinRandom(new byte[32])));
+        RandomDelegator generator = tree.get();
+        assertThat(tree.get()).isSameAs(generator);
+
+        final AtomicReference<RandomDelegator> otherGenerator = new AtomicReference<>();
+        final AtomicReference<byte[]> otherBytes = new AtomicReference<>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                otherGenerator.set(tree.get());
+                byte[] bytes = new byte[32];
+                tree.get().nextBytes(bytes);
+                otherBytes.set(bytes);
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertThat(otherGenerator.get()).isNotSameAs(generator);
+        byte[] bytes = new byte[32];
+        generator.nextBytes(bytes);
+        assertThat(bytes).isNotEqualTo(otherBytes.get());
+        assertThat(tree.getForks()).isEqualTo(2);
+    }
+
+    @Test
+    public void testReseed() {
+        GeneratorTree tree = new GeneratorTree(new RandomDelegator(new SkeinRandom(new byte[32])));
+        GeneratorTree sameTree = new GeneratorTree(new RandomDelegator(new SkeinRandom(new byte[32])));
+        tree.get();
+        sameTree.get();
+
+        tree.addSeedMaterial(new byte[] {1, 2, 3});
+        byte[] bytes = new byte[32];
+        tree.get().nextBytes(bytes);
+        byte[] sameBytes = new byte[32];
+        sameTree.get().nextBytes(sameBytes);
+
+        // reseed of root is propagated to thread generator
+        assertThat(bytes).isNotEqualTo(sameBytes);
+        assertThat(tree.getMaxLag()).isGreaterThanOrEqualTo(0);
+        assertThat(tree.getForks()).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.continent.random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class PaddingGeneratorTest {
+
+    @Test
+    public void testHeapAndDirectBuffers() {
+        RandomDelegator random = new RandomDelegator(new SkeinRandom(new byte[32]));
+        ByteBuf heap = Unpooled.buffer(1);
+        ByteBuf direct = Unpooled.directBuffer(1);
+        heap.writeByte(1);
+        direct.writeByte(1);
+
+        PaddingGenerator.write(heap, 10000, random);
+        PaddingGenerator.write(direct, 3, random);
+        PaddingGenerator.write(direct, 9997, random);
+        PaddingGenerator.write(direct, 0, random);
+
+        assertThat(heap.readableBytes()).isEqualTo(10001);
+        assertThat(direct.readableBytes()).isEqualTo(10001);
+        assertThat(heap.getByte(0)).isEqualTo((byte) 1);
+        assertThat(direct.getByte(0)).isEqualTo((byte) 1);
+
+        byte[] zeros = new byte[100];
+        assertThat(ByteBufUtil.getBytes(heap, 1, 100)).isNotEqualTo(zeros);
+        assertThat(ByteBufUtil.getBytes(heap, 9901, 100)).isNotEqualTo(zeros);
+        assertThat(ByteBufUtil.getBytes(direct, 9901, 100)).isNotEqualTo(zeros);
+        assertThat(ByteBufUtil.getBytes(heap, 1, 100)).isNotEqualTo(ByteBufUtil.getBytes(direct, 1, 100));
+
+        heap.release();
+        direct.release();
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.continent.random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RandomDelegatorTest {
+
+    @Test
+    public void testBufferedSequence() {
+        RandomDelegator plain = new RandomDelegator(new SkeinRandom(new byte[32]));
+        RandomDelegator buffered = new RandomDelegator(new SkeinRandom(new byte[32]), 64);
+
+        // buffered values follow output of generator
+        byte[] expected = new byte[64];
+        plain.nextBytes(expected);
+        byte[] actual = new byte[16];
+        buffered.nextBytes(actual);
+        assertThat(actual).isEqualTo(Arrays.copyOf(expected, 16));
+        int value = buffered.nextInt();
+        assertThat(value).isEqualTo((expected[16] & 0xFF) << 24 | (expected[17] & 0xFF) << 16
+                                    | (expected[18] & 0xFF) << 8 | (expected[19] & 0xFF));
+    }
+
+    @Test
+    public void testBufferedBounds() {
+        RandomDelegator buffered = new RandomDelegator(new SkeinRandom(new byte[32]), 64);
+        int[] counts = new int[10];
+        for (int i = 0; i < 10000; i++) {
+            int value = buffered.nextInt(10);
+            assertThat(value).isBetween(0, 9);
+            counts[value]++;
+            assertThat(buffered.nextInt(16)).isBetween(0, 15);
+        }
+        for (int count : counts) {
+            assertThat(count).isGreaterThan(800);
+        }
+
+        byte[] large = new byte[100];
+        buffered.nextBytes(large);
+        assertThat(large).isNotEqualTo(new byte[100]);
+    }
+
+}
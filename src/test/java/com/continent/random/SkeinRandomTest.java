@@ -1,6 +1,12 @@
 package com.continent.random;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import com.continent.engine.skein.SkeinDigest;
 import org.bouncycastle.crypto.prng.RandomGenerator;
+import org.junit.Test;
 
 public class SkeinRandomTest extends BaseRandomTest {
 
@@ -9,5 +15,29 @@ public class SkeinRandomTest extends BaseRandomTest {
         return new SkeinRandom(seed);
     }
 
+    @Test
+    public void testSkeinOutput() {
+        SkeinRandom random = new SkeinRandom(new byte[] {1, 2, 3}, null, SkeinDigest.SKEIN_256, 16);
+
+        byte[] state = new byte[32];
+        SkeinDigest stateDigest = new SkeinDigest(SkeinDigest.SKEIN_256, SkeinDigest.SKEIN_256, 16);
+        stateDigest.update(state, 0, state.length);
+        stateDigest.update(new byte[] {1, 2, 3}, 0, 3);
+        stateDigest.doFinal(state, 0);
+
+        // each output is Skein digest of state with size of new state and requested bytes
+        for (int len : new int[] {0, 1, 31, 32, 33, 1000, 5}) {
+            SkeinDigest digest = new SkeinDigest(SkeinDigest.SKEIN_256, (state.length + len)*8, 16);
+            digest.update(state, 0, state.length);
+            byte[] out = new byte[state.length + len];
+            digest.doFinal(out, 0);
+            System.arraycopy(out, 0, state, 0, state.length);
+
+            byte[] bytes = new byte[len + 2];
+            random.nextBytes(bytes, 1, len);
+            assertThat(Arrays.copyOfRange(bytes, 1, len + 1)).isEqualTo(Arrays.copyOfRange(out, state.length, out.length));
+        }
+    }
+
     
 }
@@ -0,0 +1,60 @@
+package com.continent.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.bouncycastle.crypto.macs.SkeinMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.Test;
+
+public class ClientIdentifierTest {
+
+    private byte[] mac(byte[] key, byte[] data) {
+        SkeinMac mac = new SkeinMac(SkeinMac.SKEIN_256, 256);
+        mac.init(new KeyParameter(key));
+        mac.update(data, 0, data.length);
+        byte[] result = new byte[mac.getMacSize()];
+        mac.doFinal(result, 0);
+        return result;
+    }
+
+    @Test
+    public void testIdentify() {
+        Random random = new Random(1);
+        Map<byte[], byte[]> id2PubKey = new LinkedHashMap<>();
+        byte[][] ids = new byte[ClientIdentifier.BATCH_SIZE * 2 + 10][];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = new byte[32];
+            random.nextBytes(ids[i]);
+            id2PubKey.put(ids[i], new byte[] {(byte) i});
+        }
+
+        byte[] data = new byte[2000];
+        random.nextBytes(data);
+
+        for (int threads : new int[] {1, 4}) {
+            ClientIdentifier identifier = new ClientIdentifier(id2PubKey, threads);
+            try {
+                for (int index : new int[] {0, ClientIdentifier.BATCH_SIZE + 1, ids.length - 1}) {
+                    byte[] tag = mac(ids[index], data);
+                    ClientIdentifier.Match match = identifier.identify(data, Arrays.copyOf(tag, HandshakeService.tagSize));
+                    assertThat(match).isNotNull();
+                    assertThat(match.getId()).isSameAs(ids[index]);
+                    assertThat(match.getPubKey()).containsExactly((byte) index);
+                    assertThat(match.getTag()).isEqualTo(tag);
+                }
+
+                byte[] wrongTag = new byte[HandshakeService.tagSize];
+                random.nextBytes(wrongTag);
+                assertThat(identifier.identify(data, wrongTag)).isNull();
+            } finally {
+                identifier.shutdown();
+            }
+        }
+    }
+
+}
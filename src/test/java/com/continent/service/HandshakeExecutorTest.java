@@ -0,0 +1,117 @@
+package com.continent.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HandshakeExecutorTest {
+
+    static class RecordTask implements Runnable {
+
+        final List<String> executed;
+        final String name;
+        final CountDownLatch latch;
+
+        RecordTask(List<String> executed, String name, CountDownLatch latch) {
+            this.executed = executed;
+            this.name = name;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            executed.add(name);
+            latch.countDown();
+        }
+
+    }
+
+    @Test
+    public void testRoundRobin() throws InterruptedException {
+        HandshakeExecutor executor = new HandshakeExecutor(1, 100, 10);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(4);
+        Executor a = executor.forClient("a");
+        Executor b = executor.forClient("b");
+        a.execute(new RecordTask(executed, "a1", latch));
+        a.execute(new RecordTask(executed, "a2", latch));
+        a.execute(new RecordTask(executed, "a3", latch));
+        b.execute(new RecordTask(executed, "b1", latch));
+        blocked.countDown();
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executed).containsExactly("a1", "b1", "a2", "a3");
+        assertThat(executor.getExecutedTasks()).isEqualTo(5);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRejection() throws InterruptedException {
+        HandshakeExecutor executor = new HandshakeExecutor(1, 3, 2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        executor.execute("a", task);
+        executor.execute("a", task);
+        try {
+            executor.execute("a", task);
+            fail("client queue limit should be reached");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        executor.execute("b", task);
+        try {
+            executor.execute("c", task);
+            fail("queue limit should be reached");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertThat(executor.getRejectedTasks()).isEqualTo(2);
+        assertThat(executor.getQueuedClients()).isEqualTo(2);
+
+        blocked.countDown();
+        executor.shutdown();
+    }
+
+}
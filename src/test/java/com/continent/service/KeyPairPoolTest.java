@@ -0,0 +1,92 @@
+package com.continent.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.continent.random.RandomDelegator;
+import com.continent.random.RandomService;
+import com.continent.random.entropy.EntropySource;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import net.sf.ntru.encrypt.EncryptionKeyPair;
+import org.junit.Test;
+
+public class KeyPairPoolTest {
+
+    static class TestEntropySource implements EntropySource {
+
+        private final Random random = new Random();
+
+        @Override
+        public void fill(ByteBuffer randomBytes) {
+            byte[] bytes = new byte[randomBytes.remaining()];
+            random.nextBytes(bytes);
+            randomBytes.put(bytes);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+    }
+
+    @Test
+    public void testPool() throws InterruptedException {
+        RandomService randomService = new RandomService(new TestEntropySource(), new TestEntropySource(), 0, 0);
+        KeyPairPool pool = new KeyPairPool(randomService, 2, 1);
+        try {
+            long start = System.currentTimeMillis();
+            while (pool.getSize() < 2 && System.currentTimeMillis() - start < 30000) {
+                Thread.sleep(10);
+            }
+            assertThat(pool.getSize()).isEqualTo(2);
+
+            EncryptionKeyPair first = pool.poll();
+            EncryptionKeyPair second = pool.poll();
+            assertThat(first).isNotSameAs(second);
+            assertThat(first.getPublic().getEncoded()).isNotEqualTo(second.getPublic().getEncoded());
+            assertThat(pool.getHits()).isEqualTo(2);
+
+            byte[] encoded = first.getPrivate().getEncoded();
+            KeyPairPool.burn(first);
+            assertThat(first.getPrivate().getEncoded()).isNotEqualTo(encoded);
+        } finally {
+            pool.shutdown();
+            randomService.shutdown();
+        }
+    }
+
+    @Test
+    public void testGenerationError() throws InterruptedException {
+        // applied until the end of the test
+        new MockUp<RandomService>() {
+            int calls;
+
+            @Mock
+            RandomDelegator getKeyGenerator(Invocation invocation) {
+                if (calls++ == 0) {
+                    throw new IllegalStateException("test failure");
+                }
+                return invocation.proceed();
+            }
+        };
+        RandomService randomService = new RandomService(new TestEntropySource(), new TestEntropySource(), 0, 0);
+        KeyPairPool pool = new KeyPairPool(randomService, 1, 1);
+        try {
+            long start = System.currentTimeMillis();
+            while (pool.getSize() < 1 && System.currentTimeMillis() - start < 30000) {
+                Thread.sleep(10);
+            }
+            // worker keeps generating after failure
+            assertThat(pool.getSize()).isEqualTo(1);
+        } finally {
+            pool.shutdown();
+            randomService.shutdown();
+        }
+        assertThat(pool.getSize()).isZero();
+    }
+
+}
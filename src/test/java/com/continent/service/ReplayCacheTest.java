@@ -0,0 +1,49 @@
+package com.continent.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReplayCacheTest {
+
+    @Test
+    public void testReplay() {
+        ReplayCache cache = new ReplayCache(4, 1000, 0.000001);
+        assertThat(cache.add(1)).isTrue();
+        assertThat(cache.add(1)).isFalse();
+        assertThat(cache.getReplays()).isEqualTo(1);
+
+        // tag is kept for all epochs of window
+        for (int i = 0; i < 4; i++) {
+            cache.rotate();
+            assertThat(cache.add(1)).isFalse();
+        }
+        cache.rotate();
+        assertThat(cache.add(1)).isTrue();
+    }
+
+    @Test
+    public void testFixedMemory() {
+        ReplayCache cache = new ReplayCache(4, 100000, 0.000001);
+        long memory = cache.getMemoryUsage();
+
+        Random random = new Random(1);
+        int falsePositives = 0;
+        for (int epoch = 0; epoch < 20; epoch++) {
+            for (int i = 0; i < 25000; i++) {
+                if (!cache.add(random.nextLong())) {
+                    falsePositives++;
+                }
+            }
+            cache.rotate();
+        }
+
+        assertThat(cache.getMemoryUsage()).isEqualTo(memory);
+        assertThat(cache.getSize()).isEqualTo(100000);
+        assertThat(cache.getFalsePositiveProbability()).isLessThan(0.00001);
+        assertThat(falsePositives).isLessThan(5);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.continent.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SessionExpiryTest {
+
+    private SessionData session(SessionIndex index, int id) {
+        SessionData session = new SessionData(new byte[0], new byte[0], Collections.emptyList(), Collections.emptyList(), new byte[0]);
+        index.put(id, id, session, 0);
+        return session;
+    }
+
+    @Test
+    public void testExpiry() {
+        SessionIndex index = new SessionIndex();
+        SessionExpiry expiry = new SessionExpiry(index, 1000, 100);
+        long now = System.currentTimeMillis();
+
+        SessionData idle = session(index, 1);
+        expiry.add(idle);
+        SessionData used = session(index, 2);
+        expiry.add(used);
+        used.incUsage();
+        assertThat(expiry.getSize()).isEqualTo(2);
+
+        assertThat(expiry.expire(now + 500)).isZero();
+        assertThat(expiry.expire(now + 1200)).isEqualTo(1);
+        assertThat(index.get(1, 1)).isNull();
+        assertThat(index.get(2, 2)).isSameAs(used);
+        assertThat(expiry.getExpired()).isEqualTo(1);
+        assertThat(expiry.getLastLag()).isBetween(0L, 200L);
+
+        // used session leaves the wheel and comes back when released
+        assertThat(expiry.getSize()).isZero();
+        used.updateLastAccessTime(now + 1200);
+        used.decUsage();
+        assertThat(expiry.getSize()).isEqualTo(1);
+
+        // expired session isn't scheduled again
+        idle.updateLastAccessTime(now + 1200);
+        assertThat(expiry.getSize()).isEqualTo(1);
+
+        // re-scheduled session isn't expired before its new deadline
+        assertThat(expiry.expire(now + 2100)).isZero();
+        assertThat(index.get(2, 2)).isSameAs(used);
+        assertThat(expiry.expire(now + 2300)).isEqualTo(1);
+        assertThat(index.size()).isZero();
+        assertThat(expiry.getSize()).isZero();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.continent.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import com.continent.random.SkeinRandom;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class SessionIndexTest {
+
+    private SessionData session() {
+        return new SessionData(new byte[0], new byte[0], Collections.emptyList(), Collections.emptyList(), new byte[0]);
+    }
+
+    @Test
+    public void testCollisions() {
+        SessionIndex index = new SessionIndex();
+        SessionData session1 = session();
+        SessionData session2 = session();
+
+        // equal high and low parts have the same hash
+        for (int i = 0; i < 1000; i++) {
+            index.put(i, i, i % 2 == 0 ? session1 : session2, i);
+        }
+        assertThat(index.size()).isEqualTo(1000);
+        assertThat(index.get(10, 10)).isSameAs(session1);
+        assertThat(index.get(11, 11)).isSameAs(session2);
+        assertThat(index.get(10, 11)).isNull();
+
+        assertThat(index.remove(10, 10, session2)).isEqualTo(-1);
+        assertThat(index.remove(10, 10, session1)).isEqualTo(10);
+        assertThat(index.get(10, 10)).isNull();
+        for (int i = 0; i < 1000; i++) {
+            if (i != 10) {
+                assertThat(index.get(i, i)).isNotNull();
+            }
+        }
+
+        assertThat(index.getSessions()).containsOnly(session1, session2);
+        index.removeSession(session1);
+        assertThat(index.size()).isEqualTo(500);
+        assertThat(index.getSessions()).containsOnly(session2);
+        assertThat(index.get(11, 11)).isSameAs(session2);
+    }
+
+    @Test
+    public void testByteBufLookup() {
+        byte[] sessionId = new byte[SessionId.SIZE];
+        new SkeinRandom(new byte[32]).nextBytes(sessionId);
+
+        SessionIndex index = new SessionIndex();
+        SessionData session = session();
+        index.put(SessionIndex.high(sessionId), SessionIndex.low(sessionId), session, 0);
+
+        ByteBuf buf = Unpooled.buffer().writeByte(1).writeBytes(sessionId);
+        assertThat(index.get(buf, 1)).isSameAs(session);
+        assertThat(index.get(buf, 0)).isNull();
+        buf.release();
+    }
+
+    @Test
+    public void testIVSequence() {
+        SkeinRandom generator = new SkeinRandom(new byte[32]);
+        byte[][] expected = new byte[5][CryptoService.MAX_IV_SIZE];
+        for (byte[] iv : expected) {
+            generator.nextBytes(iv);
+        }
+
+        IVSequence ivs = new IVSequence(new SkeinRandom(new byte[32]));
+        assertThat(ivs.get(3)).isEqualTo(expected[3]);
+        assertThat(ivs.get(3)).isNull();
+        assertThat(ivs.get(1)).isEqualTo(expected[1]);
+        assertThat(ivs.get(4)).isEqualTo(expected[4]);
+        assertThat(ivs.get(0)).isEqualTo(expected[0]);
+        assertThat(ivs.get(1)).isNull();
+        ivs.clear();
+        assertThat(ivs.get(2)).isNull();
+    }
+
+}